@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+public class EngineBridge implements mill.bench.Engine {
+    // mill.bench.Engine over the default-package engine, see there. The corpus comes from self-play on
+    // MillEnvironment's rules: ABOpening places and ABGame moves, both at SEARCH_DEPTH, and one move in
+    // RANDOM_MOVES is random so the games spread out. Every position is one a game can reach, unlike random
+    // boards, which mostly cannot occur. Positions are taken with the side to move as white, since the generators
+    // and the estimations play white, and sorted by phase; a phase that fills slowly is topped up by repeats.
+    private static final int SEARCH_DEPTH = 2;
+    private static final double RANDOM_MOVES = 0.25;
+    private static final int MAX_GAMES = 5000;
+
+    private final PositionList list = new PositionList();
+    private final SearchContext context = new SearchContext(null);
+
+    public EngineBridge() {
+    }
+
+    @Override
+    public long[] corpus(int phase, int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        EngineOptions options = new EngineOptions();
+        options.depth = SEARCH_DEPTH;
+        options.ttMegabytes = 1;
+        SearchContext opening = new SearchContext(TranspositionTable.ofMegabytes(options.ttMegabytes, options.ttReplacement));
+        SearchContext[] game = ABGame.newContexts(options, null);
+        MillEnvironment environment = new MillEnvironment();
+        Set<Long> positions = new LinkedHashSet<>();
+        for (int games = 0; games < MAX_GAMES && positions.size() < size; games++) {
+            environment.reset(games % 2 == 0);
+            while (!environment.isOver() && positions.size() < size) {
+                boolean white = environment.whiteToMove();
+                long own = white ? environment.board() : Bitboard.invert(environment.board());
+                int inHand = white ? environment.whiteInHand() : environment.blackInHand();
+                int ownPhase = inHand > 0 ? OPENING : Bitboard.countWhite(own) == 3 ? HOPPING : MIDGAME;
+                if (ownPhase == phase) positions.add(own);
+                PositionList actions = environment.actions();
+                long action = actions.get(random.nextInt(actions.size()));
+                if (random.nextDouble() >= RANDOM_MOVES) {
+                    Result result;
+                    if (inHand > 0) {
+                        opening.reset();
+                        result = ABOpening.search(opening, own, options);
+                    } else {
+                        for (SearchContext context : game) context.reset();
+                        result = ABGame.search(game, own, options);
+                    }
+                    long child = Bitboard.fromString(result.board);
+                    if (!white) child = Bitboard.invert(child);
+                    if (contains(actions, child)) action = child; // Always so, the engines and the environment share the generators
+                }
+                environment.step(action);
+            }
+        }
+        if (positions.isEmpty()) throw new IllegalStateException("No position of phase " + phase + " in " + MAX_GAMES + " games");
+        long[] unique = positions.stream().mapToLong(Long::longValue).toArray();
+        long[] corpus = Arrays.copyOf(unique, size);
+        for (int i = unique.length; i < size; i++) corpus[i] = unique[i % unique.length];
+        return corpus;
+    }
+
+    private static boolean contains(PositionList list, long position) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == position) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int generateAdd(long board) {
+        list.clear();
+        Bitboard.GenerateAdd(board, list);
+        return list.size();
+    }
+
+    @Override
+    public int generateAddNewList(long board) {
+        return Bitboard.GenerateAdd(board).size();
+    }
+
+    @Override
+    public int generateMove(long board) {
+        list.clear();
+        Bitboard.GenerateMove(board, true, list);
+        return list.size();
+    }
+
+    @Override
+    public int generateMoveNewList(long board) {
+        return Bitboard.GenerateMove(board, true).size();
+    }
+
+    @Override
+    public int generateHopping(long board) {
+        list.clear();
+        Bitboard.GenerateHopping(board, true, list);
+        return list.size();
+    }
+
+    @Override
+    public int generateRemove(long board) {
+        list.clear();
+        Bitboard.GenerateRemove(board, list);
+        return list.size();
+    }
+
+    @Override
+    public int countMovesMidEndGame(long board) {
+        return Bitboard.CountMovesMidEndGame(board, false);
+    }
+
+    @Override
+    public int closeMillEveryLocation(long board) {
+        int mills = 0;
+        for (int j = 0; j < Bitboard.POINTS; j++) {
+            if (Bitboard.closeMill(j, board)) mills++;
+        }
+        return mills;
+    }
+
+    @Override
+    public int abOpeningEstimate(long board) {
+        return ABOpening.staticEstimationOpening(board);
+    }
+
+    @Override
+    public int minimaxOpeningEstimate(long board) {
+        return MinimaxOpeningImproved.staticEstimationOpening(board);
+    }
+
+    @Override
+    public int abGameEstimate(long board) {
+        context.features.reset(board);
+        return ABGame.staticEstimationMidgameEndgame(context, board, 0);
+    }
+
+    @Override
+    public int minimaxGameEstimate(long board) {
+        context.features.reset(board);
+        return MinimaxGameImproved.staticEstimationMidgameEndgame(context, board, 0);
+    }
+}
@@ -0,0 +1,43 @@
+package mill.bench;
+
+public interface Engine {
+    // The engine operations the benchmarks measure. The engine lives in the default package, which no named package
+    // can import, and JMH refuses benchmark classes in the default package; so the benchmarks call the engine through
+    // this interface, implemented by EngineBridge in the default package. Each call site sees only that one class,
+    // so the JIT inlines through the interface. One instance per benchmark thread: it reuses its buffers.
+    int OPENING = 0, MIDGAME = 1, HOPPING = 2; // Corpus phases: placing, moving, moving with three pieces
+
+    static Engine create() {
+        try {
+            return (Engine) Class.forName("EngineBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("EngineBridge not on the class path", e);
+        }
+    }
+
+    long[] corpus(int phase, int size, long seed); // Positions from self-play, each with the side to move as white
+
+    int generateAdd(long board); // Number of children, into a reused list
+
+    int generateAddNewList(long board);
+
+    int generateMove(long board);
+
+    int generateMoveNewList(long board);
+
+    int generateHopping(long board);
+
+    int generateRemove(long board);
+
+    int countMovesMidEndGame(long board);
+
+    int closeMillEveryLocation(long board); // Locations for which closeMill holds
+
+    int abOpeningEstimate(long board);
+
+    int minimaxOpeningEstimate(long board);
+
+    int abGameEstimate(long board); // Including computing the evaluation terms from scratch
+
+    int minimaxGameEstimate(long board);
+}
@@ -0,0 +1,66 @@
+package mill.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    // Static estimations of the four engines over the same self-play corpus as MoveGenerationBenchmark.
+    // The midgame ones include computing the evaluation terms from scratch, which a search does incrementally.
+    private Engine engine;
+    private long[] opening, midgame;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.create();
+        opening = engine.corpus(Engine.OPENING, MoveGenerationBenchmark.CORPUS_SIZE, MoveGenerationBenchmark.SEED);
+        midgame = engine.corpus(Engine.MIDGAME, MoveGenerationBenchmark.CORPUS_SIZE, MoveGenerationBenchmark.SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MoveGenerationBenchmark.CORPUS_SIZE)
+    public int abOpening() {
+        int sum = 0;
+        for (long board : opening) sum += engine.abOpeningEstimate(board);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MoveGenerationBenchmark.CORPUS_SIZE)
+    public int minimaxOpening() {
+        int sum = 0;
+        for (long board : opening) sum += engine.minimaxOpeningEstimate(board);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MoveGenerationBenchmark.CORPUS_SIZE)
+    public int abGame() {
+        int sum = 0;
+        for (long board : midgame) sum += engine.abGameEstimate(board);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MoveGenerationBenchmark.CORPUS_SIZE)
+    public int minimaxGame() {
+        int sum = 0;
+        for (long board : midgame) sum += engine.minimaxGameEstimate(board);
+        return sum;
+    }
+}
@@ -0,0 +1,103 @@
+package mill.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+    // Move generators and mill checks, one operation being one call on one corpus position. An invocation is a pass
+    // over the corpus, so the positions vary the way they do in a search. Run with -prof gc for the allocation per
+    // operation: the list-filling generators should allocate nothing, the ones returning a new list should.
+    static final int CORPUS_SIZE = 256;
+    static final long SEED = 0x6D6F7272L; // Fixed so every run measures the same positions
+
+    private Engine engine;
+    private long[] opening, midgame, hopping;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.create();
+        opening = engine.corpus(Engine.OPENING, CORPUS_SIZE, SEED);
+        midgame = engine.corpus(Engine.MIDGAME, CORPUS_SIZE, SEED);
+        hopping = engine.corpus(Engine.HOPPING, CORPUS_SIZE, SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateAdd() {
+        int children = 0;
+        for (long board : opening) children += engine.generateAdd(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateAddNewList() {
+        int children = 0;
+        for (long board : opening) children += engine.generateAddNewList(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateMove() {
+        int children = 0;
+        for (long board : midgame) children += engine.generateMove(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateMoveNewList() {
+        int children = 0;
+        for (long board : midgame) children += engine.generateMoveNewList(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateHopping() {
+        int children = 0;
+        for (long board : hopping) children += engine.generateHopping(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int generateRemove() {
+        int children = 0;
+        for (long board : midgame) children += engine.generateRemove(board);
+        return children;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int countMovesMidEndGame() {
+        int moves = 0;
+        for (long board : midgame) moves += engine.countMovesMidEndGame(board);
+        return moves;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public int closeMillEveryLocation() {
+        int mills = 0;
+        for (long board : midgame) mills += engine.closeMillEveryLocation(board);
+        return mills;
+    }
+}
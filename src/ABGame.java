@@ -1,238 +1,338 @@
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ABGame {
-    private static int positionsEvaluated = 0; // Instantiate evaluated positions to 0
+    static final List<String> OPTIONS = List.of("--time-ms", "--threads", "--parallel", "--tt-mb", "--tt-replace", "--tablebase", "--stats", "--jmx", "--batch", "--workers");
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.out.println("Input format: java ABGame <input board file> <output board file> <depth>");
+        EngineOptions options = EngineOptions.parse(args, OPTIONS);
+        if (options == null) {
+            System.out.println(EngineOptions.usage("ABGame", OPTIONS));
+            return;
+        }
+        if (options.jmx) SearchMetrics.register("ABGame");
+        Tablebase tablebase = options.tablebaseFile == null ? null : Tablebase.open(Path.of(options.tablebaseFile)); // Mapped once, every thread shares the pages
+        if (options.batch) {
+            Batch.run(options, () -> {
+                SearchContext[] contexts = newContexts(options, tablebase); // Reused for every board the worker takes
+                return board -> {
+                    for (SearchContext context : contexts) context.reset();
+                    return search(contexts, board, options);
+                };
+            });
             return;
         }
-        String inputPositions = args[0]; // Takes first argument as input board
-        String outputPositions = args[1]; // Takes second argument as output board
-        int depth = Integer.parseInt(args[2]); // Parses the third argument as int for depth
 
-        BufferedReader reader = new BufferedReader(new FileReader(inputPositions)); // Instantiate new reader
+        BufferedReader reader = new BufferedReader(new FileReader(options.inputFile)); // Instantiate new reader
         String boardPosition = reader.readLine(); // Reads first argument string as starting board position
         reader.close();
 
-        Result bestMove = alphabeta(boardPosition.toCharArray(), depth, true, Integer.MIN_VALUE, Integer.MAX_VALUE); // Call alphabeta algorithm, assuming white makes the first move
+        SearchContext[] contexts = newContexts(options, tablebase); // One per search thread, contexts[0] belongs to the main thread
+        Result bestMove = search(contexts, Bitboard.fromString(boardPosition), options); // Call alphabeta algorithm, assuming white makes the first move
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(outputPositions)); // Instantiate new writer
+        BufferedWriter writer = new BufferedWriter(new FileWriter(options.outputFile)); // Instantiate new writer
         writer.write(bestMove.board); // Outputs the result of alphabeta to the output board file
         writer.close();
 
+        long cutoffs = 0, firstMoveCutoffs = 0;
+        for (SearchContext context : contexts) {
+            cutoffs += context.ordering.cutoffs;
+            firstMoveCutoffs += context.ordering.firstMoveCutoffs;
+        }
         System.out.println("Board Position: " + bestMove.board);
         System.out.println("Positions evaluated by static estimation: " + bestMove.positions);
         System.out.println("AB estimate: " + bestMove.estimate);
+        if (options.timeMs > 0) {
+            System.out.println("Depth searched: " + contexts[0].depthSearched);
+        }
+        if (options.tablebaseFile != null) {
+            int hits = 0;
+            for (SearchContext context : contexts) hits += context.tablebaseHits;
+            System.out.println("Positions scored by the tablebase: " + hits);
+        }
+        System.out.printf("Beta cutoffs: %d (%.1f%% on the first move)%n", cutoffs, cutoffs == 0 ? 0 : 100.0 * firstMoveCutoffs / cutoffs);
+        if (options.stats) System.out.print(bestMove.stats.report());
     }
 
-    private static Result alphabeta(char[] board, int depth, boolean isWhite, int alpha, int beta) {
-        // Returns a Result class containing current board, estimate, and number of evaluated positions
-        // alpha represents the max player's minimum score
-        // beta represents the min player's maximum score
-        if (depth == 0) {
-            positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
-            return new Result(new String(board), staticEstimationMidgameEndgame(board), positionsEvaluated);
+    static SearchContext[] newContexts(EngineOptions options, Tablebase tablebase) {
+        boolean lazySmp = options.lazySmp && options.threads > 1;
+        TranspositionTable shared = lazySmp ? TranspositionTable.ofMegabytes(options.ttMegabytes, options.ttReplacement) : null;
+        SearchContext[] contexts = new SearchContext[options.threads];
+        for (int t = 0; t < contexts.length; t++) { // Root splitting gives each thread its own share of the table memory
+            contexts[t] = new SearchContext(lazySmp ? shared : TranspositionTable.ofMegabytes(Math.max(1, options.ttMegabytes / contexts.length), options.ttReplacement));
+            contexts[t].tablebase = tablebase;
         }
+        if (contexts.length > 1) contexts[0].helpers = new ForkJoinPool(contexts.length - 1); // The main thread searches too
+        return contexts;
+    }
 
-        List<char[]> possibleMoves; // Create an empty list of character arrays
-        if (isWhite) { // If it is white's turn
-            possibleMoves = GenerateMovesMidEndGame(board, 'W');
+    static Result search(SearchContext[] contexts, long board, EngineOptions options) {
+        boolean isWhite = true;
+        long key = Zobrist.hash(board, isWhite);
+        boolean lazySmp = options.lazySmp && contexts.length > 1;
+        SearchStats stats = new SearchStats("ABGame", contexts);
+        ForkJoinPool pool = contexts[0].helpers; // Null for one thread, otherwise reused by every search of the set
+        if (lazySmp) return stats.finish(searchLazySmp(contexts, board, key, options, pool, stats));
+        if (options.timeMs <= 0) { // Fixed depth search
+            contexts[0].depthSearched = options.depth;
+            int estimate = searchRoot(contexts, board, key, options.depth, pool);
+            stats.iteration(options.depth);
+            return stats.finish(new Result(Bitboard.toString(contexts[0].bestMove(board)), estimate, positionsEvaluated(contexts)));
         }
-        else { // If it is black's turn
-            possibleMoves = GenerateMovesMidEndGame(board, 'B');
+        // Iterative deepening: search depth 1, 2, 3... until the budget runs out and keep the last completed result.
+        // Each iteration stores its best root move in the table, so the next one searches it first.
+        // Killer and history scores also carry over from one iteration to the next.
+        long budgetEnd = System.nanoTime() + options.timeMs * 1_000_000;
+        int estimate = 0;
+        long bestMove = board;
+        for (int depth = 1; depth <= options.depth; depth++) {
+            for (SearchContext context : contexts) {
+                context.deadline = depth == 1 ? Long.MAX_VALUE : budgetEnd; // Depth 1 always finishes so there is a move to write
+            }
+            try {
+                estimate = searchRoot(contexts, board, key, depth, pool);
+                bestMove = contexts[0].bestMove(board); // Taken now, an aborted iteration overwrites the principal variation
+                contexts[0].depthSearched = depth;
+                stats.iteration(depth);
+            } catch (SearchAbortedException e) {
+                break; // The unfinished iteration is dropped
+            }
+            if (System.nanoTime() >= budgetEnd) break;
         }
+        return stats.finish(new Result(Bitboard.toString(bestMove), estimate, positionsEvaluated(contexts)));
+    }
 
-        Result bestResult = null;
-        for (char[] move : possibleMoves) { // For each possible move
-            Result eval = alphabeta(move, depth - 1, !isWhite, alpha, beta); // Recursively evaluate the level above
-
-            if (isWhite) { // If it is white's turn (max)
-                if (bestResult == null || eval.estimate > bestResult.estimate) { // Choose the estimate larger than bestResult
-                    bestResult = new Result(new String(move), eval.estimate, eval.positions);
-                }
-                alpha = Math.max(alpha, eval.estimate);
-            }
-            else { // If it is black's turn (min)
-                if (bestResult == null || eval.estimate < bestResult.estimate) { // Choose the estimate smaller than bestResult
-                    bestResult = new Result(new String(move), eval.estimate, eval.positions);
+    private static Result searchLazySmp(SearchContext[] contexts, long board, long key, EngineOptions options, ForkJoinPool pool, SearchStats stats) {
+        // Lazy SMP: every thread runs its own iterative deepening over the whole tree, and the threads cooperate
+        // only through the shared table. Helpers on odd threads start one depth ahead so the threads spread
+        // over different depths. Only the main thread's result is reported.
+        long budgetEnd = options.timeMs > 0 ? System.nanoTime() + options.timeMs * 1_000_000 : Long.MAX_VALUE;
+        SearchContext main = contexts[0];
+        ForkJoinTask<?>[] helpers = new ForkJoinTask<?>[contexts.length - 1];
+        for (int t = 1; t < contexts.length; t++) {
+            SearchContext context = contexts[t];
+            int startDepth = 1 + t % 2;
+            context.deadline = budgetEnd;
+            helpers[t - 1] = pool.submit(() -> deepen(context, board, key, startDepth, options.depth));
+        }
+        int estimate = 0;
+        long bestMove = board;
+        main.features.reset(board);
+        try {
+            for (int depth = 1; depth <= options.depth; depth++) { // A fixed depth search deepens too, so the helpers have shallower entries to share
+                main.deadline = depth == 1 ? Long.MAX_VALUE : budgetEnd; // Depth 1 always finishes so there is a move to write
+                try {
+                    estimate = alphabeta(main, board, key, depth, 0, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    bestMove = main.bestMove(board);
+                    main.depthSearched = depth;
+                    stats.iteration(depth); // Counts the helpers' nodes of the same stretch of time too
+                } catch (SearchAbortedException e) {
+                    break; // The unfinished iteration is dropped
                 }
-                beta = Math.min(beta, eval.estimate);
+                if (System.nanoTime() >= budgetEnd) break;
             }
-            if (beta <= alpha) {
-                break; // If alpha is >= to beta, we have a contradiction and the node is pruned
+        } finally {
+            for (SearchContext context : contexts) context.stopped = true;
+            for (ForkJoinTask<?> helper : helpers) helper.join(); // Make sure no helper still writes to the table
+        }
+        return new Result(Bitboard.toString(bestMove), estimate, positionsEvaluated(contexts));
+    }
+
+    private static void deepen(SearchContext context, long board, long key, int depth, int maxDepth) { // Helper thread of the Lazy SMP search
+        context.features.reset(board);
+        try {
+            for (; depth <= maxDepth; depth++) {
+                alphabeta(context, board, key, depth, 0, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
             }
+        } catch (SearchAbortedException e) {
+            // Stopped by the main thread or out of time
         }
-        return bestResult;
     }
 
-    private static int staticEstimationMidgameEndgame(char[] b) {
-        int numWhitePieces = 0, numBlackPieces = 0;
+    private static int positionsEvaluated(SearchContext[] contexts) {
+        int total = 0;
+        for (SearchContext context : contexts) total += context.positionsEvaluated;
+        return total;
+    }
 
-        for (char c : b) { // Count the number of white and black pieces
-            if (c == 'W') numWhitePieces++;
-            else if (c == 'B') numBlackPieces++;
+    private static int searchRoot(SearchContext[] contexts, long board, long key, int depth, ForkJoinPool pool) { // Returns the estimate, the best move is left in contexts[0]
+        SearchContext main = contexts[0];
+        main.features.reset(board);
+        if (pool == null || depth < 2) { // One thread searches exactly like the serial engine
+            return alphabeta(main, board, key, depth, 0, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
         }
+        // Root splitting: the first child is searched alone to get a good alpha, then every thread takes
+        // the remaining children one at a time and searches them against the best score found so far.
+        PositionList possibleMoves = main.moves(0);
+        Bitboard.GenerateMovesMidEndGame(board, true, possibleMoves);
+        if (possibleMoves.isEmpty()) {
+            return alphabeta(main, board, key, depth, 0, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        main.interiorNodes++;
+        long entry = main.table.probe(key);
+        main.ordering.order(board, possibleMoves, entry != TranspositionTable.MISS ? TranspositionTable.move(entry) : Move.NONE, 0, true);
 
-        List<char[]> blackMoves = GenerateMovesMidEndGame(b, 'B'); // Get the number of black moves
-        int numBlackMoves = blackMoves.size();
+        long first = possibleMoves.get(0);
+        main.features.make(0, board, first);
+        int estimate = alphabeta(main, first, Zobrist.update(key, board ^ first), depth - 1, 1, false, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        RootSplit split = new RootSplit(possibleMoves, estimate, first); // Helpers read the moves while the main thread only uses deeper plies
 
-        positionsEvaluated++;
+        ForkJoinTask<?>[] helpers = new ForkJoinTask<?>[contexts.length - 1];
+        for (int t = 1; t < contexts.length; t++) {
+            SearchContext context = contexts[t];
+            helpers[t - 1] = pool.submit(() -> searchSiblings(context, board, key, depth, split));
+        }
+        RuntimeException failure = null;
+        try {
+            searchSiblings(main, board, key, depth, split);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (ForkJoinTask<?> helper : helpers) { // Wait for every helper, even after a failure, so none is still running next iteration
+            try {
+                helper.join();
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
 
-        if (numBlackPieces <= 2) return 10000; // Run the sample static estimation function
-        else if (numWhitePieces <= 2) return -10000;
-        else if (numBlackMoves == 0) return 10000;
-        else return 1000 * (numWhitePieces - numBlackPieces) - numBlackMoves;
+        main.table.store(key, depth, TranspositionTable.EXACT, split.bestScore, Move.between(board, split.bestMove));
+        main.pv[0][0] = split.bestMove; // The rest of the line was found by whichever thread searched the move
+        main.pvLength[0] = 1;
+        return split.bestScore;
     }
 
-    private static List<char[]> GenerateMovesMidEndGame(char[] board, char piece) {
-        List<char[]> positions;
-        int count = 0;
-        for (char c : board) { // Count the number of pieces on the board
-            if (c == piece) count++;
+    private static void searchSiblings(SearchContext context, long board, long key, int depth, RootSplit split) {
+        context.features.reset(board);
+        for (int i = split.next.getAndIncrement(); i < split.moves.size(); i = split.next.getAndIncrement()) {
+            long move = split.moves.get(i);
+            context.features.make(0, board, move);
+            int alpha = split.alpha.get(); // Children that cannot beat the best score so far fail low quickly
+            int estimate = alphabeta(context, move, Zobrist.update(key, board ^ move), depth - 1, 1, false, alpha, Integer.MAX_VALUE);
+            if (estimate > alpha) split.offer(estimate, move);
         }
+    }
+
+    private static class RootSplit { // Root children and the best of them, shared by the threads of one parallel iteration
+        final PositionList moves;
+        final AtomicInteger next = new AtomicInteger(1); // Index of the next child to hand out, the first is already searched
+        final AtomicInteger alpha;
+        int bestScore;
+        long bestMove;
 
-        if (count == 3) { // If the board has three white pieces, call GenerateHopping. Or else call GenerateMove.
-            positions = GenerateHopping(board, piece);
+        RootSplit(PositionList moves, int score, long move) {
+            this.moves = moves;
+            this.alpha = new AtomicInteger(score);
+            this.bestScore = score;
+            this.bestMove = move;
         }
-        else {
-            positions = GenerateMove(board, piece);
+
+        synchronized void offer(int score, long move) {
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                alpha.accumulateAndGet(score, Math::max);
+            }
         }
-        return positions;
     }
 
-    private static List<char[]> GenerateMove(char[] board, char piece) {
-        List<char[]> L = new ArrayList<>();
-
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == piece) { // If the piece matches the designated color
-                int[] neighbors = neighbors(location); // Get all of its neighbors
-                for (int j : neighbors) { // For each neighbor
-                    if (board[j] == 'x') { // If the spot is empty
-                        char[] b = board.clone();
-                        b[location] = 'x'; // Mark the location as empty and move the piece to new spot at 'j'
-                        b[j] = piece;
-                        if (closeMill(j, b)) { // If a mill can be closed, call GenerateRemove
-                            GenerateRemove(b, L);
-                        } else { // Or else add the board to L and return L.
-                            L.add(b);
-                        }
-                    }
-                }
+    private static int alphabeta(SearchContext context, long board, long key, int depth, int ply, boolean isWhite, int alpha, int beta) {
+        // Returns the estimate of board and leaves the best line from it in context.pv[ply]
+        // alpha represents the max player's minimum score
+        // beta represents the min player's maximum score
+        context.checkTime();
+        context.pvLength[ply] = 0;
+        if (ply > 0 && context.tablebase != null) { // A solved position needs no search, and is exact at any depth
+            int code = context.tablebase.probe(board, isWhite);
+            if (code >= 0) {
+                context.tablebaseHits++;
+                return Tablebase.score(code, isWhite);
             }
         }
-        return L;
-    }
+        if (depth == 0) {
+            context.leafNodes++;
+            context.positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
+            return staticEstimationMidgameEndgame(context, board, ply);
+        }
 
-    private static List<char[]> GenerateHopping(char[] board, char piece) {
-        List<char[]> L = new ArrayList<>();
-
-        for (int alpha = 0; alpha < board.length; alpha++) {
-            if (board[alpha] == piece) { // If alpha matches the designated piece
-                for (int beta = 0; beta < board.length; beta++) {
-                    if (board[beta] == 'x') { // If any spot on the board is empty
-                        char[] b = board.clone(); // Move the piece over to the empty spot and set original position to empty.
-                        b[alpha] = 'x';
-                        b[beta] = piece;
-                        if (closeMill(beta, b)) {
-                            GenerateRemove(b, L);
-                        } else {
-                            L.add(b);
-                        }
-                    }
+        TranspositionTable table = context.table;
+        int hashMove = Move.NONE;
+        long entry = table.probe(key); // Probe before generating moves, a deep enough entry may answer the node by itself
+        context.ttProbes++;
+        if (entry != TranspositionTable.MISS) {
+            context.ttHits++;
+            hashMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) { // The root always searches so it can report a move
+                int score = TranspositionTable.score(entry), flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT
+                        || (flag == TranspositionTable.LOWER && score >= beta)
+                        || (flag == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
                 }
             }
         }
-        return L;
-    }
 
-    public static void GenerateRemove(char[] board, List<char[]> L) {
-        boolean added = false;
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == 'B') {
-                if (!closeMill(location, board)) { // If the piece is black and no mills can be closed
-                    char[] b = board.clone();
-                    b[location] = 'x'; // Mark the board location as empty and add to output list
-                    L.add(b);
-                    added = true;
+        PositionList possibleMoves = context.moves(ply); // Children for the side to move
+        Bitboard.GenerateMovesMidEndGame(board, isWhite, possibleMoves);
+        if (possibleMoves.isEmpty()) { // A side with no moves left is scored like a leaf
+            context.leafNodes++;
+            context.positionsEvaluated++;
+            return staticEstimationMidgameEndgame(context, board, ply);
+        }
+        context.interiorNodes++;
+        context.ordering.order(board, possibleMoves, hashMove, ply, isWhite); // Stored best move first, then mills and captures, killers and history
+
+        int alphaOriginal = alpha, betaOriginal = beta;
+        int bestEstimate = 0;
+        long bestMove = 0;
+        for (int i = 0; i < possibleMoves.size(); i++) { // For each possible move
+            long move = possibleMoves.get(i);
+            context.features.make(ply, board, move);
+            int estimate = alphabeta(context, move, Zobrist.update(key, board ^ move), depth - 1, ply + 1, !isWhite, alpha, beta); // Recursively evaluate the level above
+
+            if (isWhite) { // If it is white's turn (max)
+                if (i == 0 || estimate > bestEstimate) { // Choose the estimate larger than the best so far
+                    bestEstimate = estimate;
+                    bestMove = move;
+                    context.updatePv(ply, move);
                 }
+                alpha = Math.max(alpha, estimate);
+            }
+            else { // If it is black's turn (min)
+                if (i == 0 || estimate < bestEstimate) { // Choose the estimate smaller than the best so far
+                    bestEstimate = estimate;
+                    bestMove = move;
+                    context.updatePv(ply, move);
+                }
+                beta = Math.min(beta, estimate);
+            }
+            if (beta <= alpha) {
+                context.ordering.cutoff(board, move, ply, depth, i, isWhite);
+                break; // If alpha is >= to beta, we have a contradiction and the node is pruned
             }
         }
-        if (!added) {
-            L.add(board); // If no positions were added (all black pieces are in mills), add the input board position to L.
-        }
+        int flag = bestEstimate <= alphaOriginal ? TranspositionTable.UPPER
+                : bestEstimate >= betaOriginal ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, depth, flag, bestEstimate, Move.between(board, bestMove));
+        return bestEstimate;
     }
 
-    private static int[] neighbors(int location) { // Given a location, return all its neighbors
-        return switch (location) {
-            case 0 -> new int[]{1, 2, 15};
-            case 1 -> new int[]{0, 3, 11};
-            case 2 -> new int[]{0, 3, 4, 12};
-            case 3 -> new int[]{1, 2, 5, 7};
-            case 4 -> new int[]{2, 5, 9};
-            case 5 -> new int[]{3, 4, 6};
-            case 6 -> new int[]{5, 7, 11};
-            case 7 -> new int[]{3, 6, 8, 14};
-            case 8 -> new int[]{1, 7, 17};
-            case 9 -> new int[]{4, 10, 12};
-            case 10 -> new int[]{9, 11, 13};
-            case 11 -> new int[]{6, 10, 14};
-            case 12 -> new int[]{2, 9, 13, 15};
-            case 13 -> new int[]{10, 12, 14, 16};
-            case 14 -> new int[]{7, 11, 13, 17};
-            case 15 -> new int[]{0, 12, 16};
-            case 16 -> new int[]{13, 15, 17};
-            case 17 -> new int[]{8, 14, 16};
-            default -> new int[]{};
-        };
-    }
+    static int staticEstimationMidgameEndgame(SearchContext context, long b, int ply) { // b is the position at ply of the current search path
+        PositionFeatures features = context.features;
+        int numWhitePieces = features.whiteCount(ply), numBlackPieces = features.blackCount(ply); // Count the number of white and black pieces
+
+        int numBlackMoves = features.moves(ply, b, false); // Get the number of black moves
 
-    public static boolean closeMill(int j, char[] b) { // Same function as in ABOpening.java
-        char c = b[j];
-        if (c == 'x') {
-            return false;
-        }
-        return switch (j) {
-            case 0 -> // a0
-                    (b[2] == c && b[4] == c); // the mill is a0, b1, c2
-            case 1 -> // g0
-                    (b[3] == c && b[5] == c) || (b[8] == c && b[17] == c); // mill is g0, f1, e2 OR g0, g3, g6
-            case 2 -> // b1
-                    (b[0] == c && b[4] == c); // the mill is a0, b1, c2
-            case 3 -> // f1
-                    (b[1] == c && b[5] == c) || (b[7] == c && b[14] == c); // mill is g0, f1, e2 OR f1, f3, f5
-            case 4 -> // c2
-                    (b[0] == c && b[2] == c); // the mill is a0, b1, c2
-            case 5 -> // e2
-                    (b[0] == c && b[3] == c) || (b[6] == c && b[11] == c); // mill is g0, f1, e2 OR e2, e3, e4
-            case 6 -> // e3
-                    (b[5] == c && b[11] == c) || (b[7] == c && b[8] == c); // mill is e2, e3, e4 OR e3, f3, g3
-            case 7 -> // f3
-                    (b[3] == c && b[14] == c) || (b[6] == c && b[8] == c); // mill is f1, f3, f5 OR e3, f3, g3
-            case 8 -> // g3
-                    (b[1] == c && b[17] == c) || (b[6] == c && b[7] == c); // mill is g0, g3, g6 OR e3, f3, g3
-            case 9 -> // c4
-                    (b[12] == c && b[15] == c) || (b[10] == c && b[11] == c); // mill is c4, b5, a6 OR c4, d4, e4
-            case 10 -> // d4
-                    (b[9] == c && b[11] == c) || (b[13] == c && b[16] == c); // mill is d4, c4, e4 OR d4, d5, d6
-            case 11 -> // e4
-                    (b[9] == c && b[10] == c) || (b[5] == c && b[6] == c) || (b[14] == c && b[17] == c); // mill is e4, c4, d4 OR e4, e3, e2 OR e4, f5, g6
-            case 12 -> // b5
-                    (b[15] == c && b[9] == c) || (b[13] == c && b[14] == c); // mill is b5, a6, c4 OR b5, d5, f5
-            case 13 -> // d5
-                    (b[12] == c && b[14] == c) || (b[10] == c && b[16] == c); // mill is d5, b5, f5 OR d5, d4, d6
-            case 14 -> // f5
-                    (b[12] == c && b[13] == c) || (b[11] == c && b[17] == c) || (b[3] == c && b[7] == c); // mill is f5, b5, d5 OR f5, e4, g6 OR f5, f1, f3
-            case 15 -> // a6
-                    (b[12] == c && b[9] == c) || (b[17] == c && b[16] == c); // mill is a6, b5, c4 OR a6, d6, g6
-            case 16 -> // d6
-                    (b[15] == c && b[17] == c) || (b[10] == c && b[13] == c); // mill is d6, a6, g6 OR d6, d4, d5
-            case 17 -> // g6
-                    (b[15] == c && b[16] == c) || (b[1] == c && b[8] == c) || (b[11] == c && b[14] == c); // mill is g6, a6, d6 OR g6, g0, g3 OR g6, e4, f5
-            default -> false;
-        };
+        context.positionsEvaluated++;
+
+        if (numBlackPieces <= 2) return 10000; // Run the sample static estimation function
+        else if (numWhitePieces <= 2) return -10000;
+        else if (numBlackMoves == 0) return 10000;
+        else return 1000 * (numWhitePieces - numBlackPieces) - numBlackMoves;
     }
 }
@@ -1,199 +1,205 @@
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 
 public class ABOpening {
-    public static int positionsEvaluated = 0; // Instantiate evaluated positions to 0
+    static final List<String> OPTIONS = List.of("--time-ms", "--tt-mb", "--tt-replace", "--book", "--stats", "--jmx", "--batch", "--workers");
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.out.println("Input format: java ABOpening <input board file> <output board file> <depth>");
+        EngineOptions options = EngineOptions.parse(args, OPTIONS);
+        if (options == null) {
+            System.out.println(EngineOptions.usage("ABOpening", OPTIONS));
+            return;
+        }
+        if (options.jmx) SearchMetrics.register("ABOpening");
+        OpeningBook book = options.bookFile == null ? null : OpeningBook.open(Path.of(options.bookFile), OpeningBook.AB_OPENING);
+        if (options.batch) {
+            Batch.run(options, () -> {
+                SearchContext context = new SearchContext(TranspositionTable.ofMegabytes(options.ttMegabytes, options.ttReplacement)); // Reused for every board the worker takes
+                return board -> {
+                    OpeningBook.Entry entry = probeBook(book, board, options);
+                    if (entry != null) return new Result(Bitboard.toString(entry.child), entry.score, 0);
+                    context.reset();
+                    return search(context, board, options);
+                };
+            });
             return;
         }
 
-        String inputPositions = args[0]; // Takes first argument as input board
-        String outputPositions = args[1]; // Takes second argument as output board
-        int depth = Integer.parseInt(args[2]); // Parses the third argument as int for depth
-
-        BufferedReader reader = new BufferedReader(new FileReader(inputPositions)); // Instantiate new reader
+        BufferedReader reader = new BufferedReader(new FileReader(options.inputFile)); // Instantiate new reader
         String boardPosition = reader.readLine(); // Reads first argument string as starting board position
         reader.close();
 
-        boolean isWhite = true;
-        Result bestMove = alphabeta(boardPosition.toCharArray(), depth, isWhite, Integer.MIN_VALUE, Integer.MAX_VALUE); // Call alphabeta algorithm, assuming white makes the first move
+        long board = Bitboard.fromString(boardPosition);
+        SearchContext context = new SearchContext(TranspositionTable.ofMegabytes(options.ttMegabytes, options.ttReplacement)); // Table, killer and history tables and counters of the search
+        OpeningBook.Entry entry = probeBook(book, board, options);
+        Result bestMove = entry != null ? new Result(Bitboard.toString(entry.child), entry.score, 0)
+                : search(context, board, options); // Call alphabeta algorithm, assuming white makes the first move
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(outputPositions)); // Instantiate new writer
+        BufferedWriter writer = new BufferedWriter(new FileWriter(options.outputFile)); // Instantiate new writer
         writer.write(bestMove.board); // Outputs the result of alphabeta to the output board file
         writer.close();
 
         System.out.println("Board Position: " + bestMove.board);
         System.out.println("Positions evaluated by static estimation: " + bestMove.positions);
         System.out.println("AB estimate: " + bestMove.estimate);
+        if (entry != null) {
+            System.out.println("Depth searched: " + entry.depth + " (opening book)");
+        } else if (options.timeMs > 0) {
+            System.out.println("Depth searched: " + context.depthSearched);
+        }
+        System.out.printf("Beta cutoffs: %d (%.1f%% on the first move)%n", context.ordering.cutoffs, 100 * context.ordering.firstMoveCutoffRate());
+        if (options.stats && bestMove.stats != null) System.out.print(bestMove.stats.report());
     }
 
-    public static Result alphabeta(char[] board, int depth, boolean isWhite, int alpha, int beta) {
-        // Returns a Result class containing current board, estimate, and number of evaluated positions
+    static OpeningBook.Entry probeBook(OpeningBook book, long board, EngineOptions options) { // A book move searched at least as deep as asked for, or null
+        OpeningBook.Entry entry = book == null ? null : book.probe(board, true);
+        return entry != null && (options.timeMs > 0 || entry.depth >= options.depth) ? entry : null;
+    }
+
+    static Result search(SearchContext context, long board, EngineOptions options) {
+        boolean isWhite = true;
+        long key = Zobrist.hash(board, isWhite);
+        SearchStats stats = new SearchStats("ABOpening", context);
+        if (options.timeMs <= 0) { // Fixed depth search
+            context.depthSearched = options.depth;
+            int estimate = alphabeta(context, board, key, options.depth, 0, isWhite, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            stats.iteration(options.depth);
+            return stats.finish(new Result(Bitboard.toString(context.bestMove(board)), estimate, context.positionsEvaluated));
+        }
+        // Iterative deepening: search depth 1, 2, 3... until the budget runs out and keep the last completed result.
+        // Each iteration stores its best root move in the table, so the next one searches it first.
+        // Killer and history scores also carry over from one iteration to the next.
+        long budgetEnd = System.nanoTime() + options.timeMs * 1_000_000;
+        int estimate = 0;
+        long bestMove = board;
+        for (int depth = 1; depth <= options.depth; depth++) {
+            context.deadline = depth == 1 ? Long.MAX_VALUE : budgetEnd; // Depth 1 always finishes so there is a move to write
+            try {
+                estimate = alphabeta(context, board, key, depth, 0, isWhite, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                bestMove = context.bestMove(board); // Taken now, an aborted iteration overwrites the principal variation
+                context.depthSearched = depth;
+                stats.iteration(depth);
+            } catch (SearchAbortedException e) {
+                break; // The unfinished iteration is dropped
+            }
+            if (System.nanoTime() >= budgetEnd) break;
+        }
+        context.deadline = Long.MAX_VALUE;
+        return stats.finish(new Result(Bitboard.toString(bestMove), estimate, context.positionsEvaluated));
+    }
+
+    public static int alphabeta(SearchContext context, long board, long key, int depth, int ply, boolean isWhite, int alpha, int beta) {
+        // Returns the estimate of board and leaves the best line from it in context.pv[ply]
         // alpha represents the max player's minimum score
         // beta represents the min player's maximum score
+        context.checkTime();
+        context.pvLength[ply] = 0;
         if (depth == 0) {
-            positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
-            return new Result(new String(board), staticEstimationOpening(board), positionsEvaluated);
+            context.leafNodes++;
+            context.positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
+            return staticEstimationOpening(board);
+        }
+
+        TranspositionTable table = context.table;
+        int hashMove = Move.NONE;
+        long entry = table.probe(key); // Probe before generating moves, a deep enough entry may answer the node by itself
+        context.ttProbes++;
+        if (entry != TranspositionTable.MISS) {
+            context.ttHits++;
+            hashMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) { // The root always searches so it can report a move
+                int score = TranspositionTable.score(entry), flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT
+                        || (flag == TranspositionTable.LOWER && score >= beta)
+                        || (flag == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        PositionList possibleMoves = context.moves(ply);
+        if (isWhite) GenerateMovesOpening(board, possibleMoves);
+        else GenerateMovesOpeningBlack(board, possibleMoves);
+        if (possibleMoves.isEmpty()) { // A side with no moves left is scored like a leaf
+            context.leafNodes++;
+            context.positionsEvaluated++;
+            return staticEstimationOpening(board);
         }
+        context.interiorNodes++;
+        MoveOrdering ordering = context.ordering;
+        ordering.order(board, possibleMoves, hashMove, ply, isWhite); // Stored best move first, then mills and captures, killers and history
 
-        List<char[]> possibleMoves; // Create an empty list of character arrays
-        Result bestResult;
+        int alphaOriginal = alpha, betaOriginal = beta;
+        long bestMove = board;
+        int bestEstimate;
         if (isWhite) { // If it is white's turn
-            possibleMoves = GenerateMovesOpening(board);
-            bestResult = new Result(null, Integer.MIN_VALUE, 0); // Maximize by setting estimate to the smallest int
-            for (char[] move : possibleMoves) { // For each possible move
-                Result eval = alphabeta(move, depth - 1, false, alpha, beta); // Recursively evaluate the level above
-                if (eval.estimate > bestResult.estimate) { // Choose the estimate larger than bestResult
-                    bestResult = new Result(new String(move), eval.estimate, eval.positions);
+            bestEstimate = Integer.MIN_VALUE; // Maximize by starting from the smallest int
+            for (int i = 0; i < possibleMoves.size(); i++) { // For each possible move
+                long move = possibleMoves.get(i);
+                int estimate = alphabeta(context, move, Zobrist.update(key, board ^ move), depth - 1, ply + 1, false, alpha, beta); // Recursively evaluate the level above
+                if (estimate > bestEstimate) { // Choose the estimate larger than the best so far
+                    bestEstimate = estimate;
+                    bestMove = move;
+                    context.updatePv(ply, move);
                 }
-                alpha = Math.max(alpha, eval.estimate);
+                alpha = Math.max(alpha, estimate);
                 if (beta <= alpha) { // If alpha is >= to beta, we have a contradiction and the node is pruned
+                    ordering.cutoff(board, move, ply, depth, i, isWhite);
                     break;
                 }
             }
         }
         else { // If it is black's turn
-            possibleMoves = GenerateMovesOpeningBlack(board);
-            bestResult = new Result(null, Integer.MAX_VALUE, 0); // Minimize by setting estimate to the largest int
-            for (char[] move : possibleMoves) { // For each possible move
-                Result eval = alphabeta(move, depth - 1, true, alpha, beta); // Recursively evaluate the level above
-                if (eval.estimate < bestResult.estimate) { // Choose the estimate smaller than bestResult
-                    bestResult = new Result(new String(move), eval.estimate, eval.positions);
+            bestEstimate = Integer.MAX_VALUE; // Minimize by starting from the largest int
+            for (int i = 0; i < possibleMoves.size(); i++) { // For each possible move
+                long move = possibleMoves.get(i);
+                int estimate = alphabeta(context, move, Zobrist.update(key, board ^ move), depth - 1, ply + 1, true, alpha, beta); // Recursively evaluate the level above
+                if (estimate < bestEstimate) { // Choose the estimate smaller than the best so far
+                    bestEstimate = estimate;
+                    bestMove = move;
+                    context.updatePv(ply, move);
                 }
-                beta = Math.min(beta, eval.estimate);
+                beta = Math.min(beta, estimate);
                 if (beta <= alpha) { // If alpha is >= to beta, we have a contradiction and the node is pruned
+                    ordering.cutoff(board, move, ply, depth, i, isWhite);
                     break;
                 }
             }
         }
-        return bestResult;
+        int flag = bestEstimate <= alphaOriginal ? TranspositionTable.UPPER
+                : bestEstimate >= betaOriginal ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, depth, flag, bestEstimate, bestMove == board ? Move.NONE : Move.between(board, bestMove));
+        return bestEstimate;
     }
 
-    public static List<char[]> GenerateMovesOpening(char[] board) { // Call GenerateAdd for white's turn
-        return GenerateAdd(board);
+    public static PositionList GenerateMovesOpening(long board) { // Call GenerateAdd for white's turn
+        return Bitboard.GenerateAdd(board);
     }
 
-    public static List<char[]> GenerateMovesOpeningBlack(char[] board) {
-        // Generate moves for black by inverting the board colors and using the same GenerateMovesOpening function
-        char[] invertedBoard = invertBoardColors(board);
-        List<char[]> moves = GenerateMovesOpening(invertedBoard);
-        List<char[]> blackMoves = new ArrayList<>();
-        for (char[] move : moves) {
-            blackMoves.add(invertBoardColors(move));
-        }
-        return blackMoves;
+    public static void GenerateMovesOpening(long board, PositionList L) { // Appends the children to L instead of allocating a list
+        Bitboard.GenerateAdd(board, L);
     }
 
-    public static char[] invertBoardColors(char[] board) { // Replaces all 'W' with 'B' and 'B' with 'W'
-        char[] invertedBoard = new char[board.length];
-        for (int i = 0; i < board.length; i++) {
-            if (board[i] == 'W') {
-                invertedBoard[i] = 'B';
-            } else if (board[i] == 'B') {
-                invertedBoard[i] = 'W';
-            } else {
-                invertedBoard[i] = board[i];
-            }
-        }
-        return invertedBoard;
-    }
-
-    public static List<char[]> GenerateAdd(char[] board) {
-        List<char[]> L = new ArrayList<>(); // Creates an empty arraylist
-
-        for (int location = 0; location < board.length; location++) { // For each board location
-            if (board[location] == 'x') { // If empty, duplicate the board and place a white piece at the location
-                char[] b = board.clone();
-                b[location] = 'W';
-
-                if (closeMill(location, b)) { // If a mill can be closed for location, call GenerateRemove
-                    GenerateRemove(b, L);
-                } else {
-                    L.add(b); // Or else add the board to the output list
-                }
-            }
-        }
-
+    public static PositionList GenerateMovesOpeningBlack(long board) {
+        PositionList L = new PositionList();
+        GenerateMovesOpeningBlack(board, L);
         return L;
     }
 
-    public static void GenerateRemove(char[] board, List<char[]> L) {
-        boolean added = false;
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == 'B') {
-                if (!closeMill(location, board)) { // If the piece is black and no mills can be closed
-                    char[] b = board.clone();
-                    b[location] = 'x'; // Mark the board location as empty and add to output list
-                    L.add(b);
-                    added = true;
-                }
-            }
-        }
-        if (!added) {
-            L.add(board); // If no positions were added (all black pieces are in mills), add the input board position to L.
-        }
-    }
-
-    public static boolean closeMill(int j, char[] b) {
-        char c = b[j];
-        if (c == 'x') { // Check to see if the location is empty
-            return false;
+    public static void GenerateMovesOpeningBlack(long board, PositionList L) {
+        // Generate moves for black by inverting the board colors and using the same GenerateMovesOpening function
+        int first = L.size();
+        GenerateMovesOpening(Bitboard.invert(board), L);
+        for (int i = first; i < L.size(); i++) { // Invert the new children back in place
+            L.set(i, Bitboard.invert(L.get(i)));
         }
-        return switch (j) {
-            case 0 -> // a0
-                    (b[2] == c && b[4] == c); // the mill is a0, b1, c2
-            case 1 -> // g0
-                    (b[3] == c && b[5] == c) || (b[8] == c && b[17] == c); // mill is g0, f1, e2 OR g0, g3, g6
-            case 2 -> // b1
-                    (b[0] == c && b[4] == c); // the mill is a0, b1, c2
-            case 3 -> // f1
-                    (b[1] == c && b[5] == c) || (b[7] == c && b[14] == c); // mill is g0, f1, e2 OR f1, f3, f5
-            case 4 -> // c2
-                    (b[0] == c && b[2] == c); // the mill is a0, b1, c2
-            case 5 -> // e2
-                    (b[0] == c && b[3] == c) || (b[6] == c && b[11] == c); // mill is g0, f1, e2 OR e2, e3, e4
-            case 6 -> // e3
-                    (b[5] == c && b[11] == c) || (b[7] == c && b[8] == c); // mill is e2, e3, e4 OR e3, f3, g3
-            case 7 -> // f3
-                    (b[3] == c && b[14] == c) || (b[6] == c && b[8] == c); // mill is f1, f3, f5 OR e3, f3, g3
-            case 8 -> // g3
-                    (b[1] == c && b[17] == c) || (b[6] == c && b[7] == c); // mill is g0, g3, g6 OR e3, f3, g3
-            case 9 -> // c4
-                    (b[12] == c && b[15] == c) || (b[10] == c && b[11] == c); // mill is c4, b5, a6 OR c4, d4, e4
-            case 10 -> // d4
-                    (b[9] == c && b[11] == c) || (b[13] == c && b[16] == c); // mill is d4, c4, e4 OR d4, d5, d6
-            case 11 -> // e4
-                    (b[9] == c && b[10] == c) || (b[5] == c && b[6] == c) || (b[14] == c && b[17] == c); // mill is e4, c4, d4 OR e4, e3, e2 OR e4, f5, g6
-            case 12 -> // b5
-                    (b[15] == c && b[9] == c) || (b[13] == c && b[14] == c); // mill is b5, a6, c4 OR b5, d5, f5
-            case 13 -> // d5
-                    (b[12] == c && b[14] == c) || (b[10] == c && b[16] == c); // mill is d5, b5, f5 OR d5, d4, d6
-            case 14 -> // f5
-                    (b[12] == c && b[13] == c) || (b[11] == c && b[17] == c) || (b[3] == c && b[7] == c); // mill is f5, b5, d5 OR f5, e4, g6 OR f5, f1, f3
-            case 15 -> // a6
-                    (b[12] == c && b[9] == c) || (b[17] == c && b[16] == c); // mill is a6, b5, c4 OR a6, d6, g6
-            case 16 -> // d6
-                    (b[15] == c && b[17] == c) || (b[10] == c && b[13] == c); // mill is d6, a6, g6 OR d6, d4, d5
-            case 17 -> // g6
-                    (b[15] == c && b[16] == c) || (b[1] == c && b[8] == c) || (b[11] == c && b[14] == c); // mill is g6, a6, d6 OR g6, g0, g3 OR g6, e4, f5
-            default -> false;
-        };
     }
 
-    public static int staticEstimationOpening(char[] b) {
-        int numWhitePieces = 0;
-        int numBlackPieces = 0;
-
-        for (char c : b) { // Count the number of white and black pieces
-            if (c == 'W') numWhitePieces++;
-            else if (c == 'B') numBlackPieces++;
-        }
+    public static int staticEstimationOpening(long b) {
+        int numWhitePieces = Bitboard.countWhite(b); // Count the number of white and black pieces
+        int numBlackPieces = Bitboard.countBlack(b);
 
         return numWhitePieces - numBlackPieces; // return the difference between the piece counts
     }
 }
-
@@ -0,0 +1,61 @@
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+public class Batch {
+    // Batch mode of the engine command lines: the input holds one board per line, and the output gets one line
+    // "board, bestMove, estimate, positions, elapsedNs" per board, in input order.
+    // Boards are searched in parallel by a pool of workers. Each worker keeps its own engine state and resets it for
+    // every board, so a board gets the same result as a single run of the engine no matter which worker takes it.
+    // Only a few boards per worker are read ahead of the output, so inputs of any size stream through in bounded memory.
+    static final String USAGE = "With --batch the input file holds one board per line, either file may be - for stdin or stdout";
+    private static final int READ_AHEAD = 4; // Boards in flight per worker
+
+    interface Engine { // Searches one board at a time, owned by one worker thread
+        Result analyze(long board);
+    }
+
+    private Batch() {
+    }
+
+    static void run(EngineOptions options, Supplier<Engine> engines) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(options.workers);
+        ThreadLocal<Engine> engine = ThreadLocal.withInitial(engines); // Created the first time a worker takes a board
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>(); // Results not written yet, in input order
+        try (BufferedReader reader = new BufferedReader(options.inputFile.equals("-") ? new InputStreamReader(System.in) : new FileReader(options.inputFile));
+             BufferedWriter writer = new BufferedWriter(options.outputFile.equals("-") ? new OutputStreamWriter(System.out) : new FileWriter(options.outputFile))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                String board = line.trim();
+                if (board.isEmpty()) continue;
+                pending.add(pool.submit(() -> analyze(engine.get(), board)));
+                while (pending.size() >= options.workers * READ_AHEAD) write(pending.poll(), writer);
+            }
+            while (!pending.isEmpty()) write(pending.poll(), writer);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String analyze(Engine engine, String board) {
+        if (!Bitboard.isBoard(board)) return board + ", error: not a board";
+        long start = System.nanoTime();
+        Result result = engine.analyze(Bitboard.fromString(board));
+        long elapsed = System.nanoTime() - start;
+        return board + ", " + result.board + ", " + result.estimate + ", " + result.positions + ", " + elapsed;
+    }
+
+    private static void write(Future<String> result, BufferedWriter writer) throws IOException {
+        if (!result.isDone()) writer.flush(); // Hand over what is ready before waiting on a search
+        try {
+            writer.write(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+        writer.newLine();
+    }
+}
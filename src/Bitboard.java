@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+public final class Bitboard {
+    // A position is packed into one long: bits 0-17 hold the white pieces and bits 32-49 hold the black pieces.
+    // Bit i of each half stands for board location i, in the same order as the 18-character board strings.
+    public static final int POINTS = 18;
+    public static final int FULL = (1 << POINTS) - 1; // Mask with every board location set
+    public static final long EMPTY = 0L; // Position with no pieces on the board
+
+    private static final int[][] NEIGHBOR_LIST = {
+            {1, 2, 15}, {0, 3, 11}, {0, 3, 4, 12}, {1, 2, 5, 7}, {2, 5, 9}, {3, 4, 6},
+            {5, 7, 11}, {3, 6, 8, 14}, {1, 7, 17}, {4, 10, 12}, {9, 11, 13}, {6, 10, 14},
+            {2, 9, 13, 15}, {10, 12, 14, 16}, {7, 11, 13, 17}, {0, 12, 16}, {13, 15, 17}, {8, 14, 16}
+    };
+    private static final int[] NEIGHBORS = new int[POINTS]; // NEIGHBORS[i] is the mask of locations adjacent to i
+    private static final int[] NEIGHBOR_OF = new int[POINTS]; // NEIGHBOR_OF[i] is the mask of locations that have i as a neighbor
+
+    // For each location, the two partner locations of every mill closeMill checks for it.
+    // This is kept exactly as the original closeMill switch had it: location 5 checks g0, f1, e2 against 0 and 3,
+    // so the mills are not all symmetric and a full line does not always count for all three of its locations.
+    private static final int[][][] MILL_PARTNERS = {
+            {{2, 4}}, // a0: a0, b1, c2
+            {{3, 5}, {8, 17}}, // g0: g0, f1, e2 OR g0, g3, g6
+            {{0, 4}}, // b1: a0, b1, c2
+            {{1, 5}, {7, 14}}, // f1: g0, f1, e2 OR f1, f3, f5
+            {{0, 2}}, // c2: a0, b1, c2
+            {{0, 3}, {6, 11}}, // e2: g0, f1, e2 OR e2, e3, e4
+            {{5, 11}, {7, 8}}, // e3: e2, e3, e4 OR e3, f3, g3
+            {{3, 14}, {6, 8}}, // f3: f1, f3, f5 OR e3, f3, g3
+            {{1, 17}, {6, 7}}, // g3: g0, g3, g6 OR e3, f3, g3
+            {{12, 15}, {10, 11}}, // c4: c4, b5, a6 OR c4, d4, e4
+            {{9, 11}, {13, 16}}, // d4: d4, c4, e4 OR d4, d5, d6
+            {{9, 10}, {5, 6}, {14, 17}}, // e4: e4, c4, d4 OR e4, e3, e2 OR e4, f5, g6
+            {{15, 9}, {13, 14}}, // b5: b5, a6, c4 OR b5, d5, f5
+            {{12, 14}, {10, 16}}, // d5: d5, b5, f5 OR d5, d4, d6
+            {{12, 13}, {11, 17}, {3, 7}}, // f5: f5, b5, d5 OR f5, e4, g6 OR f5, f1, f3
+            {{12, 9}, {17, 16}}, // a6: a6, b5, c4 OR a6, d6, g6
+            {{15, 17}, {10, 13}}, // d6: d6, a6, g6 OR d6, d4, d5
+            {{15, 16}, {1, 8}, {11, 14}} // g6: g6, a6, d6 OR g6, g0, g3 OR g6, e4, f5
+    };
+    private static final int[][] MILLS_AT = new int[POINTS][]; // MILLS_AT[i] holds the full mill masks (including i) checked for i
+    private static final int[] MILLS; // Every distinct mill mask
+    private static final int[] MILL_OWNERS; // MILL_OWNERS[k] is the mask of locations that check MILLS[k]
+
+    static {
+        for (int location = 0; location < POINTS; location++) {
+            for (int j : NEIGHBOR_LIST[location]) {
+                NEIGHBORS[location] |= 1 << j;
+                NEIGHBOR_OF[j] |= 1 << location; // Not always NEIGHBORS[j]: g0 lists e4 and g3 lists g0, but not the other way around
+            }
+        }
+        int[] mills = new int[POINTS * 3];
+        int[] owners = new int[POINTS * 3];
+        int count = 0;
+        for (int location = 0; location < POINTS; location++) {
+            MILLS_AT[location] = new int[MILL_PARTNERS[location].length];
+            for (int m = 0; m < MILL_PARTNERS[location].length; m++) {
+                int mill = (1 << location) | (1 << MILL_PARTNERS[location][m][0]) | (1 << MILL_PARTNERS[location][m][1]);
+                MILLS_AT[location][m] = mill;
+                int k = 0;
+                while (k < count && mills[k] != mill) k++; // Find the mill if another location already checks it
+                if (k == count) mills[count++] = mill;
+                owners[k] |= 1 << location;
+            }
+        }
+        MILLS = Arrays.copyOf(mills, count);
+        MILL_OWNERS = Arrays.copyOf(owners, count);
+    }
+
+    private Bitboard() {
+    }
+
+    public static long of(int white, int black) { // Pack a white mask and a black mask into one position
+        return (white & 0xFFFFFFFFL) | ((long) black << 32);
+    }
+
+    public static int white(long position) {
+        return (int) position;
+    }
+
+    public static int black(long position) {
+        return (int) (position >>> 32);
+    }
+
+    public static int empty(long position) {
+        return FULL & ~(white(position) | black(position));
+    }
+
+    public static int pieces(long position, boolean isWhite) { // Mask of the pieces of one color
+        return isWhite ? white(position) : black(position);
+    }
+
+    public static int countWhite(long position) {
+        return Integer.bitCount(white(position));
+    }
+
+    public static int countBlack(long position) {
+        return Integer.bitCount(black(position));
+    }
+
+    public static int neighbors(int location) { // Given a location, return the mask of its neighbors
+        return NEIGHBORS[location];
+    }
+
+    public static int neighborOf(int location) { // Mask of the locations that can slide to location
+        return NEIGHBOR_OF[location];
+    }
+
+    public static long invert(long position) { // Swap the white and black halves, same as replacing every 'W' with 'B' and back
+        return of(black(position), white(position));
+    }
+
+    public static boolean isBoard(String board) { // True if board is a valid input for fromString: W, B or x at every location
+        if (board.length() != POINTS) return false;
+        for (int location = 0; location < POINTS; location++) {
+            char c = board.charAt(location);
+            if (c != 'W' && c != 'B' && c != 'x') return false;
+        }
+        return true;
+    }
+
+    public static long fromString(String board) {
+        int white = 0, black = 0;
+        for (int location = 0; location < POINTS; location++) {
+            char c = board.charAt(location);
+            if (c == 'W') white |= 1 << location;
+            else if (c == 'B') black |= 1 << location;
+        }
+        return of(white, black);
+    }
+
+    public static String toString(long position) {
+        int white = white(position), black = black(position);
+        char[] b = new char[POINTS];
+        for (int location = 0; location < POINTS; location++) {
+            int bit = 1 << location;
+            b[location] = (white & bit) != 0 ? 'W' : (black & bit) != 0 ? 'B' : 'x';
+        }
+        return new String(b);
+    }
+
+    public static PositionList GenerateMovesMidEndGame(long board, boolean isWhite) {
+        PositionList L = new PositionList();
+        GenerateMovesMidEndGame(board, isWhite, L);
+        return L;
+    }
+
+    public static void GenerateMovesMidEndGame(long board, boolean isWhite, PositionList L) { // Appends the children to L instead of allocating a list
+        if (Integer.bitCount(pieces(board, isWhite)) == 3) { // If the player has three pieces, call GenerateHopping. Or else call GenerateMove.
+            GenerateHopping(board, isWhite, L);
+        } else {
+            GenerateMove(board, isWhite, L);
+        }
+    }
+
+    public static PositionList GenerateAdd(long board) {
+        PositionList L = new PositionList();
+        GenerateAdd(board, L);
+        return L;
+    }
+
+    public static void GenerateAdd(long board, PositionList L) { // Places a white piece on every empty location
+        int white = white(board), black = black(board);
+        for (int free = empty(board); free != 0; free &= free - 1) {
+            int location = Integer.numberOfTrailingZeros(free);
+            long b = of(white | 1 << location, black);
+            if (closesMill(location, white | 1 << location)) { // If a mill can be closed for location, call GenerateRemove
+                GenerateRemove(b, L);
+            } else {
+                L.add(b);
+            }
+        }
+    }
+
+    public static PositionList GenerateMove(long board, boolean isWhite) {
+        PositionList L = new PositionList();
+        GenerateMove(board, isWhite, L);
+        return L;
+    }
+
+    public static void GenerateMove(long board, boolean isWhite, PositionList L) {
+        int own = pieces(board, isWhite), free = empty(board);
+        for (int from = own; from != 0; from &= from - 1) { // For each piece of the designated color
+            int location = Integer.numberOfTrailingZeros(from);
+            for (int to = NEIGHBORS[location] & free; to != 0; to &= to - 1) { // For each empty neighbor
+                int j = Integer.numberOfTrailingZeros(to);
+                int moved = own ^ (1 << location) ^ (1 << j);
+                long b = move(board, isWhite, moved);
+                if (closesMill(j, moved)) { // If a mill can be closed, call GenerateRemove
+                    GenerateRemove(b, L);
+                } else {
+                    L.add(b);
+                }
+            }
+        }
+    }
+
+    public static PositionList GenerateHopping(long board, boolean isWhite) {
+        PositionList L = new PositionList();
+        GenerateHopping(board, isWhite, L);
+        return L;
+    }
+
+    public static void GenerateHopping(long board, boolean isWhite, PositionList L) {
+        int own = pieces(board, isWhite), free = empty(board);
+        for (int from = own; from != 0; from &= from - 1) { // A player with three pieces may move to any empty location
+            int alpha = Integer.numberOfTrailingZeros(from);
+            for (int to = free; to != 0; to &= to - 1) {
+                int beta = Integer.numberOfTrailingZeros(to);
+                int moved = own ^ (1 << alpha) ^ (1 << beta);
+                long b = move(board, isWhite, moved);
+                if (closesMill(beta, moved)) {
+                    GenerateRemove(b, L);
+                } else {
+                    L.add(b);
+                }
+            }
+        }
+    }
+
+    public static int CountMovesMidEndGame(long board, boolean isWhite) { // Same as GenerateMovesMidEndGame(board, isWhite).size(), without building the children
+        if (Integer.bitCount(pieces(board, isWhite)) == 3) {
+            return CountHopping(board, isWhite);
+        }
+        return CountMove(board, isWhite);
+    }
+
+    public static int CountMove(long board, boolean isWhite) {
+        int own = pieces(board, isWhite), free = empty(board);
+        int count = 0;
+        for (int from = own; from != 0; from &= from - 1) { // One move per empty neighbor of each piece
+            count += Integer.bitCount(NEIGHBORS[Integer.numberOfTrailingZeros(from)] & free);
+        }
+        return count + CountRemoveExtra(board, isWhite, false, -1);
+    }
+
+    public static int CountHopping(long board, boolean isWhite) {
+        int own = pieces(board, isWhite), free = empty(board);
+        return Integer.bitCount(own) * Integer.bitCount(free) + CountRemoveExtra(board, isWhite, true, -1);
+    }
+
+    public static int CountRemoveExtra(long board, boolean isWhite, boolean hopping, int blackInMill) {
+        // Moves GenerateRemove adds beyond the first for each move that closes a mill: one per removable
+        // black piece, and none extra when every black piece is in a mill.
+        // blackInMill is inMill(black(board)) if the caller already has it, or -1 to compute it only when a white move closes a mill.
+        int own = pieces(board, isWhite), free = empty(board);
+        int targets = closingTargets(own, free);
+        if (targets == 0) return 0;
+        int removable = 0; // Black pieces GenerateRemove could take after a white mill
+        if (isWhite) {
+            int black = black(board);
+            removable = Integer.bitCount(black & ~(blackInMill == -1 ? inMill(black) : blackInMill));
+        }
+        int count = 0;
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Integer.numberOfTrailingZeros(targets);
+            for (int from = hopping ? own : own & NEIGHBOR_OF[to]; from != 0; from &= from - 1) {
+                int moved = own ^ (from & -from) ^ (1 << to);
+                if (!closesMill(to, moved)) continue; // The piece that moves was part of the mill
+                if (!isWhite) { // Black closing a mill removes one of its own pieces, so the choice depends on the move
+                    removable = Integer.bitCount(moved & ~inMill(moved));
+                }
+                count += Math.max(removable, 1) - 1;
+            }
+        }
+        return count;
+    }
+
+    public static void GenerateRemove(long board, PositionList L) {
+        int white = white(board), black = black(board);
+        int removable = black & ~inMill(black); // Black pieces that are not part of a mill
+        if (removable == 0) {
+            L.add(board); // If all black pieces are in mills, add the input board position to L.
+            return;
+        }
+        for (; removable != 0; removable &= removable - 1) { // Remove each removable piece and add to output list
+            L.add(of(white, black & ~(1 << Integer.numberOfTrailingZeros(removable))));
+        }
+    }
+
+    private static long move(long board, boolean isWhite, int own) { // Replace the mask of the moving color
+        return isWhite ? of(own, black(board)) : of(white(board), own);
+    }
+
+    public static boolean closeMill(int j, long board) {
+        int bit = 1 << j;
+        int c;
+        if ((white(board) & bit) != 0) c = white(board);
+        else if ((black(board) & bit) != 0) c = black(board);
+        else return false; // The location is empty
+        return closesMill(j, c);
+    }
+
+    public static boolean closesMill(int j, int pieces) { // True if j and both partners of one of its mills are set in pieces
+        for (int mill : MILLS_AT[j]) {
+            if ((pieces & mill) == mill) return true;
+        }
+        return false;
+    }
+
+    public static int inMill(int pieces) { // Mask of the pieces for which closeMill is true, given one color's pieces
+        int result = 0;
+        for (int i = 0; i < MILLS.length; i++) {
+            if ((pieces & MILLS[i]) == MILLS[i]) result |= MILL_OWNERS[i];
+        }
+        return result;
+    }
+
+    public static int closingTargets(int pieces, int empty) {
+        // Mask of the empty locations where one more piece would complete a mill checked for that location.
+        // Every move that closes a mill ends on one of these, whichever piece it moves.
+        int result = 0;
+        for (int i = 0; i < MILLS.length; i++) {
+            int covered = Integer.bitCount(pieces & MILLS[i]);
+            int two = -((covered >> 1) & ~covered & 1); // All ones when exactly two of the three are set, without a branch
+            result |= MILLS[i] & empty & MILL_OWNERS[i] & two; // The third location must be empty
+        }
+        return result;
+    }
+
+    public static int millsAt(int location, int index) { // Mask of the index-th mill checked for location
+        return MILLS_AT[location][index];
+    }
+
+    public static int millCountAt(int location) {
+        return MILLS_AT[location].length;
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.List;
+
+public class EngineOptions { // Command line shared by the alphabeta engines: <input> <output> [depth] [options]
+    static final int MAX_DEPTH = 64; // Deepest search, fixed or the last iteration of a --time-ms one; well inside SearchContext.MAX_PLY
+
+    String inputFile;
+    String outputFile;
+    int depth;
+    long timeMs = 0; // Wall-clock budget for iterative deepening, 0 searches exactly depth
+    int threads = 1; // Worker threads for the parallel search
+    boolean lazySmp = false; // Threads search the whole tree and share one table, instead of splitting the root
+    int ttMegabytes = 16; // Transposition table size
+    TranspositionTable.Replacement ttReplacement = TranspositionTable.Replacement.DEPTH_PREFERRED;
+    String tablebaseFile = null; // Endgame tablebase written by Tablebase, probed during the search if set
+    String bookFile = null; // Opening book written by OpeningBook, probed before searching if set
+    boolean batch = false; // Input holds one board per line, output gets one result line per board (see Batch)
+    int workers = Runtime.getRuntime().availableProcessors(); // Boards searched at once in batch mode
+    boolean stats = false; // Print the search statistics (see SearchStats) after the result
+    boolean jmx = false; // Publish the search statistics as a SearchMetrics MXBean while the engine runs
+
+    private static final String[][] USAGES = { // Every option with its usage, in the order usage lists them
+            {"--time-ms", "[--time-ms <budget>]"}, {"--threads", "[--threads <n>]"}, {"--parallel", "[--parallel split|smp]"},
+            {"--tt-mb", "[--tt-mb <megabytes>]"}, {"--tt-replace", "[--tt-replace always|depth]"}, {"--tablebase", "[--tablebase <file>]"},
+            {"--book", "[--book <file>]"}, {"--stats", "[--stats]"}, {"--jmx", "[--jmx]"}, {"--batch", "[--batch [--workers <n>]]"}};
+
+    static EngineOptions parse(String[] args, List<String> supported) { // Returns null if the arguments are malformed or use an option the engine does not support
+        if (args.length < 3) return null;
+        EngineOptions options = new EngineOptions();
+        options.inputFile = args[0]; // Takes first argument as input board
+        options.outputFile = args[1]; // Takes second argument as output board
+        try {
+            int i = 2;
+            options.depth = args[2].startsWith("--") ? MAX_DEPTH : Integer.parseInt(args[i++]); // Depth may be left out when searching on a time budget
+            for (; i < args.length; i++) {
+                if (!supported.contains(args[i])) {
+                    throw new IllegalArgumentException(args[i]); // Rejected rather than silently ignored
+                }
+                switch (args[i]) {
+                    case "--time-ms" -> options.timeMs = Long.parseLong(args[++i]);
+                    case "--threads" -> options.threads = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--parallel" -> options.lazySmp = switch (args[++i]) {
+                        case "split" -> false;
+                        case "smp" -> true;
+                        default -> throw new IllegalArgumentException(args[i]);
+                    };
+                    case "--tt-mb" -> options.ttMegabytes = Integer.parseInt(args[++i]);
+                    case "--tt-replace" -> options.ttReplacement = switch (args[++i]) {
+                        case "always" -> TranspositionTable.Replacement.ALWAYS;
+                        case "depth" -> TranspositionTable.Replacement.DEPTH_PREFERRED;
+                        default -> throw new IllegalArgumentException(args[i]);
+                    };
+                    case "--tablebase" -> options.tablebaseFile = args[++i];
+                    case "--book" -> options.bookFile = args[++i];
+                    case "--batch" -> options.batch = true;
+                    case "--workers" -> options.workers = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--stats" -> options.stats = true;
+                    case "--jmx" -> options.jmx = true;
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+        if (args[2].startsWith("--") && options.timeMs <= 0) return null; // A depth is needed without a time budget
+        if (options.depth < 1 || options.depth > MAX_DEPTH) return null; // The search buffers hold MAX_PLY plies
+        return options;
+    }
+
+    static String usage(String engine, List<String> supported) {
+        StringBuilder usage = new StringBuilder("Input format: java " + engine + " <input board file> <output board file> ");
+        usage.append(supported.contains("--time-ms") ? "[<depth>]" : "<depth>"); // The depth may only be left out with a time budget
+        for (String[] option : USAGES) {
+            if (supported.contains(option[0])) usage.append(' ').append(option[1]);
+        }
+        if (supported.contains("--batch")) usage.append(System.lineSeparator()).append(Batch.USAGE);
+        return usage.toString();
+    }
+}
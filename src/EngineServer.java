@@ -0,0 +1,258 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class EngineServer {
+    // Resident engine process: answers search requests over a local socket, so the JIT-compiled search,
+    // the transposition tables and a loaded book or tablebase stay warm from one request to the next.
+    // Line protocol, one request per line:
+    //   go <id> opening|game <board> depth <n>   ABOpening or ABGame to a fixed depth
+    //   go <id> opening|game <board> time <ms>   the same with iterative deepening on a time budget, which must be positive
+    //   cancel <id>                              drops a queued request or stops a running one
+    //   quit                                     closes the connection
+    // Every go gets exactly one answer line: "<id> ok <bestMove> <estimate> <positions> <depth> <elapsedNs>",
+    // "<id> cancelled", "<id> busy" if the queue is full, or "<id> error <message>". Answers come in the order
+    // the searches finish, and ids only need to be unique among a connection's unanswered requests.
+    // Requests of all connections share one pool of workers. Each worker keeps its own tables, which are not
+    // cleared between requests, so a result can depend on what the worker searched before.
+    private static final int DEFAULT_PORT = 5757;
+
+    private final ThreadPoolExecutor pool;
+    private final ThreadLocal<Worker> workers;
+    private final OpeningBook book; // null if none was given
+
+    private EngineServer(int workerCount, int queue, int ttMegabytes, Tablebase tablebase, OpeningBook book) {
+        pool = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue)); // Rejects once the queue is full
+        workers = ThreadLocal.withInitial(() -> new Worker(ttMegabytes, tablebase));
+        this.book = book;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT, workerCount = Runtime.getRuntime().availableProcessors(), queue = 64, ttMegabytes = 16;
+        String socket = null, tablebaseFile = null, bookFile = null;
+        boolean jmx = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--socket" -> socket = args[++i];
+                    case "--workers" -> workerCount = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--queue" -> queue = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--tt-mb" -> ttMegabytes = Integer.parseInt(args[++i]);
+                    case "--tablebase" -> tablebaseFile = args[++i];
+                    case "--book" -> bookFile = args[++i];
+                    case "--jmx" -> jmx = true;
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Input format: java EngineServer [--port <n> | --socket <path>] [--workers <n>] [--queue <n>] [--tt-mb <megabytes>] [--tablebase <file>] [--book <file>] [--jmx]");
+            return;
+        }
+        Tablebase tablebase = tablebaseFile == null ? null : Tablebase.open(Path.of(tablebaseFile));
+        OpeningBook book = bookFile == null ? null : OpeningBook.open(Path.of(bookFile), OpeningBook.AB_OPENING);
+        if (jmx) { // Totals of every worker's searches, per engine
+            SearchMetrics.register("ABOpening");
+            SearchMetrics.register("ABGame");
+        }
+        EngineServer server = new EngineServer(workerCount, queue, ttMegabytes, tablebase, book);
+
+        ServerSocketChannel listener;
+        SocketAddress address;
+        if (socket != null) { // Unix-domain socket, the file is removed again on exit
+            Path path = Path.of(socket);
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            address = UnixDomainSocketAddress.of(path);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> path.toFile().delete()));
+        } else { // Loopback only, the server is not meant to be reachable from other machines
+            listener = ServerSocketChannel.open();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        }
+        listener.bind(address);
+        System.out.println("Listening on " + listener.getLocalAddress());
+        while (true) {
+            SocketChannel channel = listener.accept();
+            Thread thread = new Thread(() -> server.serve(channel));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static final class Worker { // Search state a pool thread keeps from one request to the next
+        final SearchContext[] game;
+        final SearchContext opening;
+
+        Worker(int ttMegabytes, Tablebase tablebase) {
+            EngineOptions options = new EngineOptions();
+            options.ttMegabytes = ttMegabytes;
+            game = ABGame.newContexts(options, tablebase);
+            opening = new SearchContext(TranspositionTable.ofMegabytes(ttMegabytes, options.ttReplacement));
+        }
+    }
+
+    private final class Request implements Runnable {
+        final Connection connection;
+        final String id;
+        final boolean opening;
+        final long board;
+        final EngineOptions options;
+        volatile boolean cancelled = false;
+        private SearchContext[] running = null; // Contexts searching this request while it runs, guarded by this
+
+        Request(Connection connection, String id, boolean opening, long board, EngineOptions options) {
+            this.connection = connection;
+            this.id = id;
+            this.opening = opening;
+            this.board = board;
+            this.options = options;
+        }
+
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                Worker worker = workers.get();
+                SearchContext[] contexts = opening ? new SearchContext[]{worker.opening} : worker.game;
+                if (!start(contexts)) {
+                    connection.send(id + " cancelled");
+                    return;
+                }
+                Result result;
+                int depth;
+                OpeningBook.Entry entry = opening ? ABOpening.probeBook(book, board, options) : null;
+                if (entry != null) {
+                    result = new Result(Bitboard.toString(entry.child), entry.score, 0);
+                    depth = entry.depth;
+                } else {
+                    result = opening ? ABOpening.search(contexts[0], board, options) : ABGame.search(contexts, board, options);
+                    depth = contexts[0].depthSearched;
+                }
+                if (cancelled) { // A timed search returns its last finished iteration when stopped, but the client asked for none
+                    connection.send(id + " cancelled");
+                    return;
+                }
+                connection.send(id + " ok " + result.board + " " + result.estimate + " " + result.positions + " " + depth + " " + (System.nanoTime() - start));
+            } catch (SearchAbortedException e) {
+                connection.send(id + " cancelled");
+            } catch (RuntimeException e) {
+                connection.send(id + " error " + e);
+            } finally {
+                finish();
+                connection.requests.remove(id, this);
+            }
+        }
+
+        private synchronized boolean start(SearchContext[] contexts) { // False if the request was cancelled before it started
+            for (SearchContext context : contexts) context.startSearch(); // Clears a stop flag left over from an earlier request
+            running = contexts;
+            return !cancelled;
+        }
+
+        private synchronized void finish() { // From here on a cancel must not touch the contexts, the worker's next request uses them
+            running = null;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (pool.remove(this)) { // Still queued, it will never run
+                connection.requests.remove(id, this);
+                connection.send(id + " cancelled");
+            } else if (running != null) {
+                for (SearchContext context : running) context.stopped = true; // The search unwinds at its next clock check
+            }
+        }
+    }
+
+    private final class Connection {
+        final Map<String, Request> requests = new ConcurrentHashMap<>(); // Unanswered requests by id
+        final Writer writer;
+
+        Connection(Writer writer) {
+            this.writer = writer;
+        }
+
+        synchronized void send(String line) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                // The client is gone, its requests are cancelled when the reader sees the end of the stream
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel;
+             BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            Connection connection = new Connection(writer);
+            try {
+                for (String line; (line = reader.readLine()) != null; ) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("quit")) break;
+                    handle(connection, words);
+                }
+            } finally {
+                for (Request request : connection.requests.values()) request.cancel(); // Nobody is left to read the answers
+            }
+        } catch (IOException e) {
+            // Connection dropped
+        }
+    }
+
+    private void handle(Connection connection, String[] words) {
+        switch (words[0]) {
+            case "go" -> {
+                if (words.length != 6) {
+                    connection.send((words.length > 1 ? words[1] : "-") + " error expected go <id> opening|game <board> depth|time <n>");
+                    return;
+                }
+                String id = words[1];
+                EngineOptions options = new EngineOptions();
+                try {
+                    if (!words[2].equals("opening") && !words[2].equals("game")) throw new IllegalArgumentException("unknown phase " + words[2]);
+                    if (!Bitboard.isBoard(words[3])) throw new IllegalArgumentException("not a board " + words[3]);
+                    switch (words[4]) {
+                        case "depth" -> options.depth = Integer.parseInt(words[5]);
+                        case "time" -> {
+                            options.depth = EngineOptions.MAX_DEPTH;
+                            options.timeMs = Long.parseLong(words[5]);
+                            if (options.timeMs <= 0) throw new IllegalArgumentException("budget out of range"); // 0 would mean a fixed depth-MAX_DEPTH search
+                        }
+                        default -> throw new IllegalArgumentException("unknown budget " + words[4]);
+                    }
+                    if (options.depth < 1 || options.depth > EngineOptions.MAX_DEPTH) throw new IllegalArgumentException("budget out of range");
+                } catch (IllegalArgumentException e) {
+                    connection.send(id + " error " + e.getMessage());
+                    return;
+                }
+                Request request = new Request(connection, id, words[2].equals("opening"), Bitboard.fromString(words[3]), options);
+                if (connection.requests.putIfAbsent(id, request) != null) {
+                    connection.send(id + " error id already in use");
+                    return;
+                }
+                try {
+                    pool.execute(request);
+                } catch (RejectedExecutionException e) {
+                    connection.requests.remove(id, request);
+                    connection.send(id + " busy");
+                }
+            }
+            case "cancel" -> {
+                Request request = words.length == 2 ? connection.requests.get(words[1]) : null;
+                if (request != null) request.cancel(); // Answered by the request itself, unknown ids are already answered
+            }
+            default -> connection.send("- error unknown command " + words[0]);
+        }
+    }
+}
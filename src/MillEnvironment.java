@@ -0,0 +1,126 @@
+import java.util.SplittableRandom;
+
+public class MillEnvironment {
+    // Self-play environment for the learning agents: one whole game at a time, placement, then movement, with a
+    // side down to three pieces hopping, on the rules of Bitboard's generators. The generators play white (a mill
+    // removes a black piece), so black's moves are generated on the inverted board and inverted back.
+    // A side loses when it is down to two pieces, counting the ones still in hand, or cannot move on its turn;
+    // a game still running after MAX_PLIES plies is a draw. The actions of the side to move are generated once per
+    // step into a reused list, which is also how the end of the game is detected, so a step allocates nothing.
+    // An action is the position it leads to, as everywhere else in the engines.
+    static final int PIECES = 9; // Each side starts with nine pieces in hand
+    static final int MAX_PLIES = 200;
+    static final int WHITE_WINS = 1, BLACK_WINS = -1, DRAW = 0, RUNNING = 2;
+
+    private long board;
+    private boolean whiteToMove;
+    private int whiteInHand, blackInHand;
+    private int ply;
+    private int result = RUNNING;
+    private final PositionList actions = new PositionList(); // Actions of the side to move, valid until the next step
+
+    void reset(boolean whiteFirst) { // Empty board, both sides with all pieces in hand
+        set(Bitboard.EMPTY, whiteFirst, PIECES, PIECES);
+    }
+
+    void set(long board, boolean whiteToMove, int whiteInHand, int blackInHand) { // Any position, e.g. a midgame board with empty hands
+        this.board = board;
+        this.whiteToMove = whiteToMove;
+        this.whiteInHand = whiteInHand;
+        this.blackInHand = blackInHand;
+        ply = 0;
+        result = RUNNING;
+        update();
+    }
+
+    void step(long action) { // action must be one of actions()
+        if (whiteToMove && whiteInHand > 0) whiteInHand--;
+        else if (!whiteToMove && blackInHand > 0) blackInHand--;
+        board = action;
+        whiteToMove = !whiteToMove;
+        ply++;
+        update();
+    }
+
+    private void update() { // Generates the actions of the side to move and decides whether the game is over
+        actions.clear();
+        boolean white = whiteToMove;
+        int pieces = Bitboard.countWhite(board) + whiteInHand, opponentPieces = Bitboard.countBlack(board) + blackInHand;
+        if (!white) {
+            int swap = pieces;
+            pieces = opponentPieces;
+            opponentPieces = swap;
+        }
+        if (pieces <= 2) { // The last move took the third piece of the side to move
+            result = white ? BLACK_WINS : WHITE_WINS;
+            return;
+        }
+        if (opponentPieces <= 2) { // Only in a position given to set
+            result = white ? WHITE_WINS : BLACK_WINS;
+            return;
+        }
+        long own = white ? board : Bitboard.invert(board); // The side to move as white
+        if ((white ? whiteInHand : blackInHand) > 0) Bitboard.GenerateAdd(own, actions);
+        else Bitboard.GenerateMovesMidEndGame(own, true, actions);
+        if (!white) {
+            for (int i = 0; i < actions.size(); i++) actions.set(i, Bitboard.invert(actions.get(i)));
+        }
+        if (actions.isEmpty()) result = white ? BLACK_WINS : WHITE_WINS; // Blocked
+        else if (ply >= MAX_PLIES) result = DRAW;
+        else result = RUNNING;
+    }
+
+    long board() {
+        return board;
+    }
+
+    boolean whiteToMove() {
+        return whiteToMove;
+    }
+
+    int whiteInHand() {
+        return whiteInHand;
+    }
+
+    int blackInHand() {
+        return blackInHand;
+    }
+
+    PositionList actions() {
+        return actions;
+    }
+
+    boolean isOver() {
+        return result != RUNNING;
+    }
+
+    int result() { // WHITE_WINS, BLACK_WINS, DRAW or RUNNING
+        return result;
+    }
+
+    int ply() {
+        return ply;
+    }
+
+    public static void main(String[] args) { // Plays random games to measure the environment's throughput
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SplittableRandom random = new SplittableRandom(args.length > 1 ? Long.parseLong(args[1]) : 1);
+        MillEnvironment environment = new MillEnvironment();
+        long plies = 0;
+        int[] results = new int[3];
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            environment.reset(game % 2 == 0);
+            while (!environment.isOver()) {
+                PositionList actions = environment.actions();
+                environment.step(actions.get(random.nextInt(actions.size())));
+            }
+            plies += environment.ply();
+            results[environment.result() + 1]++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d random games in %.1f ms: %.0f games/s (%.1f million/hour), %.0f plies/s, %.1f plies per game%n",
+                games, elapsed / 1e6, games * 1e9 / elapsed, games * 3600 / (elapsed / 1e9) / 1e6, plies * 1e9 / elapsed, (double) plies / games);
+        System.out.println("White wins: " + results[2] + ", black wins: " + results[0] + ", draws: " + results[1]);
+    }
+}
@@ -1,231 +1,175 @@
 import java.io.*;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class MinimaxGameImproved {
-    private static int positionsEvaluated = 0; // Instantiate evaluated positions to 0
+    static final List<String> OPTIONS = List.of("--threads", "--tt-mb", "--tt-replace", "--stats", "--jmx", "--batch", "--workers"); // Minimax always searches to a fixed depth
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.out.println("Input format: java MinimaxGame <input board file> <output board file> <depth>");
+        EngineOptions options = EngineOptions.parse(args, OPTIONS);
+        if (options == null) {
+            System.out.println(EngineOptions.usage("MinimaxGameImproved", OPTIONS));
+            return;
+        }
+        if (options.jmx) SearchMetrics.register("MinimaxGameImproved");
+        if (options.batch) {
+            Batch.run(options, () -> {
+                SearchContext[] contexts = newContexts(options); // Reused for every board the worker takes
+                return board -> {
+                    for (SearchContext context : contexts) context.reset();
+                    return search(contexts, board, options);
+                };
+            });
             return;
         }
-        String inputPositions = args[0]; // Takes first argument as input board
-        String outputPositions = args[1]; // Takes second argument as output board
-        int depth = Integer.parseInt(args[2]); // Parses the third argument as int for depth
 
-        BufferedReader reader = new BufferedReader(new FileReader(inputPositions)); // Instantiate new reader
+        BufferedReader reader = new BufferedReader(new FileReader(options.inputFile)); // Instantiate new reader
         String boardPosition = reader.readLine(); // Reads first argument string as starting board position
         reader.close();
 
-        Result bestMove = minimax(boardPosition.toCharArray(), depth, false); // Call minimax algorithm, assuming white makes the first move
+        Result bestMove = search(newContexts(options), Bitboard.fromString(boardPosition), options); // Call minimax algorithm, assuming white makes the first move
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(outputPositions)); // Instantiate new writer
+        BufferedWriter writer = new BufferedWriter(new FileWriter(options.outputFile)); // Instantiate new writer
         writer.write(bestMove.board); // Outputs the result of minimax to the output board file
         writer.close();
 
         System.out.println("Board Position: " + bestMove.board);
         System.out.println("Positions evaluated by static estimation: " + bestMove.positions);
         System.out.println("MINIMAX estimate: " + bestMove.estimate);
+        if (options.stats) System.out.print(bestMove.stats.report());
     }
 
-    private static Result minimax(char[] board, int depth, boolean isWhite) {
-        // Returns a Result class containing current board, estimate, and number of evaluated positions
-        if (depth == 0) {
-            positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
-            return new Result(new String(board), staticEstimationMidgameEndgame(board), positionsEvaluated);
+    private static SearchContext[] newContexts(EngineOptions options) { // One per search thread, contexts[0] belongs to the main thread
+        TranspositionTable table = TranspositionTable.ofMegabytes(options.ttMegabytes, options.ttReplacement);
+        SearchContext[] contexts = new SearchContext[options.threads];
+        for (int t = 0; t < contexts.length; t++) {
+            contexts[t] = new SearchContext(table);
         }
+        if (contexts.length > 1) contexts[0].helpers = new ForkJoinPool(contexts.length - 1); // The main thread searches too
+        return contexts;
+    }
 
-        List<char[]> possibleMoves; // Create an empty list of character arrays
-        if (isWhite) { // If it is white's turn
-            possibleMoves = GenerateMovesMidEndGame(board, 'W');
+    private static Result search(SearchContext[] contexts, long board, EngineOptions options) {
+        // Lazy SMP: every thread searches the whole tree and they cooperate only through the shared table.
+        // Helpers start at a different root child each, so the subtrees they finish first are ones the
+        // main thread reaches later and can take from the table. Only the main thread's result is reported.
+        boolean isWhite = false;
+        long key = Zobrist.hash(board, isWhite);
+        SearchStats stats = new SearchStats("MinimaxGameImproved", contexts);
+        if (contexts.length == 1) {
+            int estimate = searchRoot(contexts[0], board, key, options.depth, isWhite, 0);
+            stats.iteration(options.depth);
+            return stats.finish(new Result(Bitboard.toString(contexts[0].bestMove(board)), estimate, contexts[0].positionsEvaluated));
         }
-        else { // If it is black's turn
-            possibleMoves = GenerateMovesMidEndGame(board, 'B');
+        ForkJoinPool pool = contexts[0].helpers; // Made with the set, reused by every search
+        ForkJoinTask<?>[] helpers = new ForkJoinTask<?>[contexts.length - 1];
+        for (int t = 1; t < contexts.length; t++) {
+            SearchContext context = contexts[t];
+            int first = t;
+            helpers[t - 1] = pool.submit(() -> {
+                try {
+                    searchRoot(context, board, key, options.depth, isWhite, first);
+                } catch (SearchAbortedException e) {
+                    // Stopped once the main thread is done
+                }
+            });
         }
-        Result bestResult = null;
-        for (char[] move : possibleMoves) { // For each possible move
-            Result eval = minimax(move, depth - 1, !isWhite); // Recursively evaluate the level above
-            if (bestResult == null || (isWhite && eval.estimate > bestResult.estimate) || (!isWhite && eval.estimate < bestResult.estimate)) {
-                // If white, then choose the estimate larger than bestResult, or else choose the one that is smaller
-                bestResult = new Result(new String(move), eval.estimate, eval.positions);
-            }
+        int estimate;
+        try {
+            estimate = searchRoot(contexts[0], board, key, options.depth, isWhite, 0);
+        } finally {
+            for (SearchContext context : contexts) context.stopped = true;
+            for (ForkJoinTask<?> helper : helpers) helper.join(); // Make sure no helper still writes to the table
         }
-        return bestResult;
+        stats.iteration(options.depth);
+        int positions = 0;
+        for (SearchContext context : contexts) positions += context.positionsEvaluated;
+        return stats.finish(new Result(Bitboard.toString(contexts[0].bestMove(board)), estimate, positions));
     }
 
-    private static int staticEstimationMidgameEndgame(char[] b) {
-        int numWhitePieces = 0, numBlackPieces = 0;
-        int whiteMills = 0, blackMills = 0;
-        for (char c : b) { // Count the number of white and black pieces
-            if (c == 'W') numWhitePieces++;
-            else if (c == 'B') numBlackPieces++;
-        }
-
-        List<char[]> blackMoves = GenerateMovesMidEndGame(b, 'B'); // Get the number of black moves
-        int numBlackMoves = blackMoves.size();
-        List<char[]> whiteMoves = GenerateMovesMidEndGame(b, 'W'); // Get the number of white moves
-        int numWhiteMoves = whiteMoves.size();
-
-        for (int i = 0; i < b.length; i++) {
-            if (b[i] == 'W' && closeMill(i,b)) { whiteMills++; }
-            if (b[i] == 'B' && closeMill(i,b)) { blackMills++; }
+    private static int searchRoot(SearchContext context, long board, long key, int depth, boolean isWhite, int first) {
+        // The root always searches its children so it can report a move, starting from child first and wrapping around
+        context.pvLength[0] = 0;
+        context.features.reset(board);
+        if (depth == 0) return minimax(context, board, key, depth, 0, isWhite);
+        PositionList possibleMoves = context.moves(0);
+        Bitboard.GenerateMovesMidEndGame(board, isWhite, possibleMoves);
+        if (possibleMoves.isEmpty()) return minimax(context, board, key, depth, 0, isWhite);
+        context.interiorNodes++;
+        int bestEstimate = 0;
+        for (int n = 0; n < possibleMoves.size(); n++) {
+            long move = possibleMoves.get((first + n) % possibleMoves.size());
+            context.features.make(0, board, move);
+            int estimate = minimax(context, move, Zobrist.update(key, board ^ move), depth - 1, 1, !isWhite);
+            if (n == 0 || (isWhite && estimate > bestEstimate) || (!isWhite && estimate < bestEstimate)) {
+                bestEstimate = estimate;
+                context.updatePv(0, move);
+            }
         }
-        positionsEvaluated++;
-
-        if (numBlackPieces <= 2) return 10000; // White wins
-        else if (numWhitePieces <= 2) return -10000; // Black wins
-        else if (numBlackMoves == 0) return 10000; // White wins
-        else if (numWhiteMoves == 0) return -10000; // Black wins
-        else return 1000 * (numWhitePieces - numBlackPieces) + (numWhiteMoves - numBlackMoves) + 400 * (whiteMills - blackMills);
-        // Factor in number of moves, as higher move count indicates greater control of the board
-        // Factor in the number of mills each player made, and provide a weight of 400 since forming mills is contingent to capturing pieces
+        return bestEstimate;
     }
 
-    private static List<char[]> GenerateMovesMidEndGame(char[] board, char piece) {
-        List<char[]> positions;
-        int count = 0;
-        for (char c : board) { // Count the number of pieces on the board
-            if (c == piece) count++;
+    private static int minimax(SearchContext context, long board, long key, int depth, int ply, boolean isWhite) {
+        // Returns the estimate of board and leaves the best line from it in context.pv[ply]
+        context.checkTime();
+        context.pvLength[ply] = 0;
+        if (depth == 0) {
+            context.leafNodes++;
+            context.positionsEvaluated++; // If the depth is 0, static estimation only evaluates one board position
+            return staticEstimationMidgameEndgame(context, board, ply);
         }
 
-        if (count == 3) { // If the board has three white pieces, call GenerateHopping. Or else call GenerateMove.
-            positions = GenerateHopping(board, piece);
-        } else {
-            positions = GenerateMove(board, piece);
+        TranspositionTable table = context.table;
+        long entry = table.probe(key);
+        context.ttProbes++;
+        if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) == depth) { // Only an entry of the same depth holds the same minimax value
+            context.ttHits++; // Counted only when usable, an entry of another depth is no hit for minimax
+            return TranspositionTable.score(entry);
         }
-        return positions;
-    }
 
-    private static List<char[]> GenerateMove(char[] board, char piece) {
-        List<char[]> L = new ArrayList<>();
-
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == piece) { // If the piece matches the designated color
-                int[] neighbors = neighbors(location); // Get all of its neighbors
-                for (int j : neighbors) { // For each neighbor
-                    if (board[j] == 'x') { // If the spot is empty
-                        char[] b = board.clone();
-                        b[location] = 'x'; // Mark the location as empty and move the piece to new spot at 'j'
-                        b[j] = piece;
-                        if (closeMill(j, b)) { // If a mill can be closed, call GenerateRemove
-                            GenerateRemove(b, L);
-                        } else { // Or else add the board to L and return L.
-                            L.add(b);
-                        }
-                    }
-                }
-            }
+        PositionList possibleMoves = context.moves(ply); // Children for the side to move
+        Bitboard.GenerateMovesMidEndGame(board, isWhite, possibleMoves);
+        if (possibleMoves.isEmpty()) { // A side with no moves left is scored like a leaf
+            context.leafNodes++;
+            context.positionsEvaluated++;
+            return staticEstimationMidgameEndgame(context, board, ply);
         }
-        return L;
-    }
-
-    private static List<char[]> GenerateHopping(char[] board, char piece) {
-        List<char[]> L = new ArrayList<>();
-
-        for (int alpha = 0; alpha < board.length; alpha++) {
-            if (board[alpha] == piece) { // If alpha matches the designated piece
-                for (int beta = 0; beta < board.length; beta++) {
-                    if (board[beta] == 'x') { // If any spot on the board is empty
-                        char[] b = board.clone(); // Move the piece over to the empty spot and set original position to empty.
-                        b[alpha] = 'x';
-                        b[beta] = piece;
-                        if (closeMill(beta, b)) {
-                            GenerateRemove(b, L);
-                        } else {
-                            L.add(b);
-                        }
-                    }
-                }
+        context.interiorNodes++;
+        int bestEstimate = 0;
+        long bestMove = 0;
+        for (int i = 0; i < possibleMoves.size(); i++) { // For each possible move
+            long move = possibleMoves.get(i);
+            context.features.make(ply, board, move);
+            int estimate = minimax(context, move, Zobrist.update(key, board ^ move), depth - 1, ply + 1, !isWhite); // Recursively evaluate the level above
+            if (i == 0 || (isWhite && estimate > bestEstimate) || (!isWhite && estimate < bestEstimate)) {
+                // If white, then choose the estimate larger than the best so far, or else choose the one that is smaller
+                bestEstimate = estimate;
+                bestMove = move;
+                context.updatePv(ply, move);
             }
         }
-        return L;
+        table.store(key, depth, TranspositionTable.EXACT, bestEstimate, Move.between(board, bestMove));
+        return bestEstimate;
     }
 
-    public static void GenerateRemove(char[] board, List<char[]> L) {
-        boolean added = false;
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == 'B') {
-                if (!closeMill(location, board)) { // If the piece is black and no mills can be closed
-                    char[] b = board.clone();
-                    b[location] = 'x'; // Mark the board location as empty and add to output list
-                    L.add(b);
-                    added = true;
-                }
-            }
-        }
-        if (!added) {
-            L.add(board); // If no positions were added (all black pieces are in mills), add the input board position to L.
-        }
-    }
+    static int staticEstimationMidgameEndgame(SearchContext context, long b, int ply) { // b is the position at ply of the current search path
+        PositionFeatures features = context.features;
+        int numWhitePieces = features.whiteCount(ply), numBlackPieces = features.blackCount(ply); // Count the number of white and black pieces
+        int whiteMills = features.whiteMills(ply); // Pieces of each color that are part of a mill
+        int blackMills = features.blackMills(ply);
 
-    private static int[] neighbors(int location) { // Given a location, return all its neighbors
-        return switch (location) {
-            case 0 -> new int[]{1, 2, 15};
-            case 1 -> new int[]{0, 3, 11};
-            case 2 -> new int[]{0, 3, 4, 12};
-            case 3 -> new int[]{1, 2, 5, 7};
-            case 4 -> new int[]{2, 5, 9};
-            case 5 -> new int[]{3, 4, 6};
-            case 6 -> new int[]{5, 7, 11};
-            case 7 -> new int[]{3, 6, 8, 14};
-            case 8 -> new int[]{1, 7, 17};
-            case 9 -> new int[]{4, 10, 12};
-            case 10 -> new int[]{9, 11, 13};
-            case 11 -> new int[]{6, 10, 14};
-            case 12 -> new int[]{2, 9, 13, 15};
-            case 13 -> new int[]{10, 12, 14, 16};
-            case 14 -> new int[]{7, 11, 13, 17};
-            case 15 -> new int[]{0, 12, 16};
-            case 16 -> new int[]{13, 15, 17};
-            case 17 -> new int[]{8, 14, 16};
-            default -> new int[]{};
-        };
-    }
+        int numBlackMoves = features.moves(ply, b, false); // Get the number of black moves
+        int numWhiteMoves = features.moves(ply, b, true); // Get the number of white moves
 
-    public static boolean closeMill(int j, char[] b) { // Same function as in MinimaxOpening.java
-        char c = b[j];
-        if (c == 'x') {
-            return false;
-        }
-        return switch (j) {
-            case 0 -> // a0
-                    (b[2] == c && b[4] == c); // the mill is a0, b1, c2
-            case 1 -> // g0
-                    (b[3] == c && b[5] == c) || (b[8] == c && b[17] == c); // mill is g0, f1, e2 OR g0, g3, g6
-            case 2 -> // b1
-                    (b[0] == c && b[4] == c); // the mill is a0, b1, c2
-            case 3 -> // f1
-                    (b[1] == c && b[5] == c) || (b[7] == c && b[14] == c); // mill is g0, f1, e2 OR f1, f3, f5
-            case 4 -> // c2
-                    (b[0] == c && b[2] == c); // the mill is a0, b1, c2
-            case 5 -> // e2
-                    (b[0] == c && b[3] == c) || (b[6] == c && b[11] == c); // mill is g0, f1, e2 OR e2, e3, e4
-            case 6 -> // e3
-                    (b[5] == c && b[11] == c) || (b[7] == c && b[8] == c); // mill is e2, e3, e4 OR e3, f3, g3
-            case 7 -> // f3
-                    (b[3] == c && b[14] == c) || (b[6] == c && b[8] == c); // mill is f1, f3, f5 OR e3, f3, g3
-            case 8 -> // g3
-                    (b[1] == c && b[17] == c) || (b[6] == c && b[7] == c); // mill is g0, g3, g6 OR e3, f3, g3
-            case 9 -> // c4
-                    (b[12] == c && b[15] == c) || (b[10] == c && b[11] == c); // mill is c4, b5, a6 OR c4, d4, e4
-            case 10 -> // d4
-                    (b[9] == c && b[11] == c) || (b[13] == c && b[16] == c); // mill is d4, c4, e4 OR d4, d5, d6
-            case 11 -> // e4
-                    (b[9] == c && b[10] == c) || (b[5] == c && b[6] == c) || (b[14] == c && b[17] == c); // mill is e4, c4, d4 OR e4, e3, e2 OR e4, f5, g6
-            case 12 -> // b5
-                    (b[15] == c && b[9] == c) || (b[13] == c && b[14] == c); // mill is b5, a6, c4 OR b5, d5, f5
-            case 13 -> // d5
-                    (b[12] == c && b[14] == c) || (b[10] == c && b[16] == c); // mill is d5, b5, f5 OR d5, d4, d6
-            case 14 -> // f5
-                    (b[12] == c && b[13] == c) || (b[11] == c && b[17] == c) || (b[3] == c && b[7] == c); // mill is f5, b5, d5 OR f5, e4, g6 OR f5, f1, f3
-            case 15 -> // a6
-                    (b[12] == c && b[9] == c) || (b[17] == c && b[16] == c); // mill is a6, b5, c4 OR a6, d6, g6
-            case 16 -> // d6
-                    (b[15] == c && b[17] == c) || (b[10] == c && b[13] == c); // mill is d6, a6, g6 OR d6, d4, d5
-            case 17 -> // g6
-                    (b[15] == c && b[16] == c) || (b[1] == c && b[8] == c) || (b[11] == c && b[14] == c); // mill is g6, a6, d6 OR g6, g0, g3 OR g6, e4, f5
-            default -> false;
-        };
+        context.positionsEvaluated++;
+
+        if (numBlackPieces <= 2) return 10000; // White wins
+        else if (numWhitePieces <= 2) return -10000; // Black wins
+        else if (numBlackMoves == 0) return 10000; // White wins
+        else if (numWhiteMoves == 0) return -10000; // Black wins
+        else return 1000 * (numWhitePieces - numBlackPieces) + (numWhiteMoves - numBlackMoves) + 400 * (whiteMills - blackMills);
+        // Factor in number of moves, as higher move count indicates greater control of the board
+        // Factor in the number of mills each player made, and provide a weight of 400 since forming mills is contingent to capturing pieces
     }
 }
@@ -1,5 +1,5 @@
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 public class MorrisGameQLearningOpening {
 
@@ -8,186 +8,156 @@ public class MorrisGameQLearningOpening {
     private static final double EXPLORATION_RATE = 0.1;
     private static final int EPISODES = 10000;
 
-    private static final Map<String, Map<String, Double>> qTable = new HashMap<>();
+    private final QValues qValues; // Q-values by packed state and action, shared by the agents of one training run
+    private final QTable qTable; // The same table for updates, null when playing from a snapshot
+    private final PositionList actions = new PositionList(); // Actions of the state being looked at, reused so a step allocates nothing
+    private final SplittableRandom random;
+    private final ReplayBuffer replayBuffer; // Transitions to learn from again, null without --replay
+    private final double[] replayTargets; // Max Q-value of each replayed transition's next state
+    private long best; // Best action and its value from the last scan, NEGATIVE_INFINITY if no action had a value
+    private float bestValue;
+    private boolean scanned = false; // Whether actions and the last scan are of the board about to be played
+
+    MorrisGameQLearningOpening(QValues qValues, SplittableRandom random, ReplayBuffer replayBuffer) { // One per training thread, or one to play
+        this.qValues = qValues;
+        this.qTable = qValues instanceof QTable table ? table : null;
+        this.random = random;
+        this.replayBuffer = replayBuffer;
+        this.replayTargets = replayBuffer == null ? null : new double[replayBuffer.batch().length];
+    }
 
-    public static void main(String[] args) {
-        // Train the agent for the opening phase
-        trainAgent();
+    public static void main(String[] args) throws IOException {
+        QLearning.Options options = new QLearning.Options(EPISODES);
+        boolean train = args.length > 0 && args[0].equals("train"); // Only train and write the snapshot
+        try {
+            for (int i = train ? 1 : 0; i < args.length; ) {
+                int next = options.parse(args, i);
+                if (next < 0) throw new IllegalArgumentException(args[i]);
+                i = next;
+            }
+            if (train && options.out == null) throw new IllegalArgumentException("train needs --out");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Input format: java MorrisGameQLearningOpening " + QLearning.USAGE);
+            System.out.println("         or: java MorrisGameQLearningOpening " + QLearning.TRAIN_USAGE);
+            return;
+        }
+
+        // Train the agent for the opening phase, unless it plays from a snapshot
+        QTableSnapshot.Header header = new QTableSnapshot.Header(QTableSnapshot.OPENING, LEARNING_RATE, DISCOUNT_FACTOR, EXPLORATION_RATE);
+        if (train) {
+            QLearning.train(options, header, (table, random) -> new MorrisGameQLearningOpening(table, random, options.replayBuffer())::trainEpisode);
+            return;
+        }
+        QValues qValues = QLearning.values(options, header, (table, random) -> new MorrisGameQLearningOpening(table, random, options.replayBuffer())::trainEpisode);
 
         // Generate a single white move for the opening phase
-        char[] initialBoard = "xxxxxxxxxxxxxxxxxx".toCharArray();
+        MorrisGameQLearningOpening agent = new MorrisGameQLearningOpening(qValues, new SplittableRandom(options.seed), null);
+        long initialBoard = Bitboard.EMPTY;
         char currentPlayer = 'W';
-        generateSingleWhiteMove(initialBoard, currentPlayer);
+        agent.generateSingleWhiteMove(initialBoard, currentPlayer);
     }
 
-    private static void trainAgent() {
-        for (int episode = 0; episode < EPISODES; episode++) {
-            char[] board = "xxxxxxxxxxxxxxxxxx".toCharArray();
-            char currentPlayer = (episode % 2 == 0) ? 'W' : 'B';
-
-            int moves = 0;
-            while (moves < 18) { // Only the first 18 moves are considered for the opening phase
-                String state = new String(board);
-                String action = selectAction(state, currentPlayer);
-                char[] nextState = applyAction(board, action, currentPlayer);
-                int reward = getReward(nextState, currentPlayer);
-
-                String nextStateStr = new String(nextState);
-                double oldQValue = qTable.getOrDefault(state, new HashMap<>()).getOrDefault(action, 0.0);
-                double nextMaxQValue = getMaxQValue(nextStateStr);
-                double newQValue = oldQValue + LEARNING_RATE * (reward + DISCOUNT_FACTOR * nextMaxQValue - oldQValue);
-
-                qTable.computeIfAbsent(state, k -> new HashMap<>()).put(action, newQValue);
-                board = nextState;
-                currentPlayer = (currentPlayer == 'W') ? 'B' : 'W';
-                moves++;
-            }
+    private int trainEpisode(long episode) {
+        long board = Bitboard.EMPTY;
+        char currentPlayer = (episode % 2 == 0) ? 'W' : 'B';
+
+        int moves = 0;
+        scanned = false;
+        while (moves < 18) { // Only the first 18 moves are considered for the opening phase
+            long action = selectAction(board, currentPlayer); // An action is the position the move leads to
+            scanned = false;
+            int reward = getReward(action, currentPlayer);
+
+            learn(board, action, reward, getMaxQValue(action));
+            if (replayBuffer != null) replayBuffer.add(board, action, reward, action, 0); // The opening never ends a game
+            board = action;
+            currentPlayer = (currentPlayer == 'W') ? 'B' : 'W';
+            moves++;
         }
+        if (replayBuffer != null) replay();
+        return moves;
+    }
+
+    private void learn(long board, long action, double reward, double nextMaxQValue) {
+        float oldQValue = qTable.get(board, action);
+        if (Float.isNaN(oldQValue)) oldQValue = 0;
+        double newQValue = oldQValue + LEARNING_RATE * (reward + DISCOUNT_FACTOR * nextMaxQValue - oldQValue);
+        qTable.put(board, action, (float) newQValue);
     }
 
-    private static String selectAction(String state, char player) {
-        if (Math.random() < EXPLORATION_RATE) {
-            return getRandomAction(state, player);
+    private void replay() { // Learns again from a batch of remembered transitions
+        int count = replayBuffer.sample(random);
+        int[] batch = replayBuffer.batch(), group = replayBuffer.group();
+        for (int j = 0; j < count; j++) { // Targets first, one scan per next state
+            replayTargets[j] = group[j] != j ? replayTargets[group[j]] : getMaxQValue(replayBuffer.next(batch[j]));
+        }
+        for (int j = 0; j < count; j++) {
+            int i = batch[j];
+            learn(replayBuffer.state(i), replayBuffer.action(i), replayBuffer.reward(i), replayTargets[j]);
+        }
+    }
+
+    private long selectAction(long board, char player) {
+        if (random.nextDouble() < EXPLORATION_RATE) {
+            return getRandomAction(board, player);
         } else {
-            return getBestAction(state, player);
+            return getBestAction(board, player);
         }
     }
 
-    private static String getRandomAction(String state, char player) {
-        List<String> possibleActions = getPossibleActions(state.toCharArray(), player);
-        return possibleActions.get(ThreadLocalRandom.current().nextInt(possibleActions.size()));
+    private long getRandomAction(long board, char player) {
+        if (!scanned) getPossibleActions(board, player);
+        return actions.get(random.nextInt(actions.size()));
     }
 
-    private static String getBestAction(String state, char player) {
-        Map<String, Double> actions = qTable.getOrDefault(state, new HashMap<>());
-        return actions.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(Map.entry(getRandomAction(state, player), 0.0)).getKey();
+    private long getBestAction(long board, char player) { // The action with the highest Q-value, a random one if none has a value yet
+        if (!scanned) { // Usually done already by the update of the step before
+            getPossibleActions(board, player);
+            scan(board);
+        }
+        return bestValue != Float.NEGATIVE_INFINITY ? best : actions.get(random.nextInt(actions.size()));
     }
 
-    private static List<String> getPossibleActions(char[] board, char player) {
-        List<String> actions = new ArrayList<>();
-        List<char[]> possibleBoards = GenerateAdd(board);
-        for (char[] possibleBoard : possibleBoards) {
-            actions.add(new String(possibleBoard));
+    private void scan(long board) { // One pass over actions for both the best action and its value
+        best = 0;
+        bestValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < actions.size(); i++) {
+            float value = qValues.get(board, actions.get(i));
+            if (value > bestValue) { // False for QTable.MISSING
+                bestValue = value;
+                best = actions.get(i);
+            }
         }
-        return actions;
     }
 
-    private static char[] applyAction(char[] board, String action, char player) {
-        return action.toCharArray();
+    private void getPossibleActions(long board, char player) { // Fills actions
+        actions.clear();
+        Bitboard.GenerateAdd(board, actions);
     }
 
-    private static int getReward(char[] board, char player) {
+    private static int getReward(long board, char player) {
         // Simplified reward function for the opening phase
-        int whitePieces = countPieces(board, 'W');
-        int blackPieces = countPieces(board, 'B');
+        int whitePieces = Bitboard.countWhite(board);
+        int blackPieces = Bitboard.countBlack(board);
         return whitePieces - blackPieces;
     }
 
-    private static int countPieces(char[] board, char player) {
-        int count = 0;
-        for (char c : board) {
-            if (c == player) count++;
-        }
-        return count;
-    }
-
-    private static double getMaxQValue(String state) {
-        return qTable.getOrDefault(state, new HashMap<>()).values().stream().max(Double::compareTo).orElse(0.0);
+    private double getMaxQValue(long board) { // Highest Q-value of the actions from board, 0 if none has a value yet
+        getPossibleActions(board, 'W');
+        scan(board); // board is played next, the next step selects from this scan
+        scanned = true;
+        return bestValue == Float.NEGATIVE_INFINITY ? 0.0 : bestValue;
     }
 
-    private static void generateSingleWhiteMove(char[] board, char currentPlayer) {
+    void generateSingleWhiteMove(long board, char currentPlayer) {
         if (currentPlayer != 'W') {
             throw new IllegalArgumentException("Current player must be 'W' for a white move.");
         }
 
-        String state = new String(board);
-        String action = getBestAction(state, currentPlayer);
-        board = applyAction(board, action, currentPlayer);
+        long action = getBestAction(board, currentPlayer);
+        board = action;
 
-        System.out.println("Generated move for White: " + action);
-        System.out.println("Board after White's move: " + new String(board));
-    }
-
-    public static List<char[]> GenerateAdd(char[] board) {
-        List<char[]> L = new ArrayList<>(); // Creates an empty arraylist
-
-        for (int location = 0; location < board.length; location++) { // For each board location
-            if (board[location] == 'x') { // If empty, duplicate the board and place a white piece at the location
-                char[] b = board.clone();
-                b[location] = 'W';
-
-                if (closeMill(location, b)) { // If a mill can be closed for location, call GenerateRemove
-                    GenerateRemove(b, L);
-                } else {
-                    L.add(b); // Or else add the board to the output list
-                }
-            }
-        }
-
-        return L;
-    }
-
-    public static void GenerateRemove(char[] board, List<char[]> L) {
-        boolean added = false;
-        for (int location = 0; location < board.length; location++) { // For each location on the board
-            if (board[location] == 'B') {
-                if (!closeMill(location, board)) { // If the piece is black and no mills can be closed
-                    char[] b = board.clone();
-                    b[location] = 'x'; // Mark the board location as empty and add to output list
-                    L.add(b);
-                    added = true;
-                }
-            }
-        }
-        if (!added) {
-            L.add(board); // If no positions were added (all black pieces are in mills), add the input board position to L.
-        }
-    }
-
-    public static boolean closeMill(int j, char[] b) {
-        char c = b[j];
-        if (c == 'x') { // Check to see if the location is empty
-            return false;
-        }
-        return switch (j) {
-            case 0 -> // a0
-                    (b[2] == c && b[4] == c); // the mill is a0, b1, c2
-            case 1 -> // g0
-                    (b[3] == c && b[5] == c) || (b[8] == c && b[17] == c); // mill is g0, f1, e2 OR g0, g3, g6
-            case 2 -> // b1
-                    (b[0] == c && b[4] == c); // the mill is a0, b1, c2
-            case 3 -> // f1
-                    (b[1] == c && b[5] == c) || (b[7] == c && b[14] == c); // mill is g0, f1, e2 OR f1, f3, f5
-            case 4 -> // c2
-                    (b[0] == c && b[2] == c); // the mill is a0, b1, c2
-            case 5 -> // e2
-                    (b[0] == c && b[3] == c) || (b[6] == c && b[11] == c); // mill is g0, f1, e2 OR e2, e3, e4
-            case 6 -> // e3
-                    (b[5] == c && b[11] == c) || (b[7] == c && b[8] == c); // mill is e2, e3, e4 OR e3, f3, g3
-            case 7 -> // f3
-                    (b[3] == c && b[14] == c) || (b[6] == c && b[8] == c); // mill is f1, f3, f5 OR e3, f3, g3
-            case 8 -> // g3
-                    (b[1] == c && b[17] == c) || (b[6] == c && b[7] == c); // mill is g0, g3, g6 OR e3, f3, g3
-            case 9 -> // c4
-                    (b[12] == c && b[15] == c) || (b[10] == c && b[11] == c); // mill is c4, b5, a6 OR c4, d4, e4
-            case 10 -> // d4
-                    (b[9] == c && b[11] == c) || (b[13] == c && b[16] == c); // mill is d4, c4, e4 OR d4, d5, d6
-            case 11 -> // e4
-                    (b[9] == c && b[10] == c) || (b[5] == c && b[6] == c) || (b[14] == c && b[17] == c); // mill is e4, c4, d4 OR e4, e3, e2 OR e4, f5, g6
-            case 12 -> // b5
-                    (b[15] == c && b[9] == c) || (b[13] == c && b[14] == c); // mill is b5, a6, c4 OR b5, d5, f5
-            case 13 -> // d5
-                    (b[12] == c && b[14] == c) || (b[10] == c && b[16] == c); // mill is d5, b5, f5 OR d5, d4, d6
-            case 14 -> // f5
-                    (b[12] == c && b[13] == c) || (b[11] == c && b[17] == c) || (b[3] == c && b[7] == c); // mill is f5, b5, d5 OR f5, e4, g6 OR f5, f1, f3
-            case 15 -> // a6
-                    (b[12] == c && b[9] == c) || (b[17] == c && b[16] == c); // mill is a6, b5, c4 OR a6, d6, g6
-            case 16 -> // d6
-                    (b[15] == c && b[17] == c) || (b[10] == c && b[13] == c); // mill is d6, a6, g6 OR d6, d4, d5
-            case 17 -> // g6
-                    (b[15] == c && b[16] == c) || (b[1] == c && b[8] == c) || (b[11] == c && b[14] == c); // mill is g6, a6, d6 OR g6, g0, g3 OR g6, e4, f5
-            default -> false;
-        };
+        System.out.println("Generated move for White: " + Bitboard.toString(action));
+        System.out.println("Board after White's move: " + Bitboard.toString(board));
     }
 }
-
@@ -0,0 +1,36 @@
+public final class Move {
+    // A move is stored as the bits it flips in a packed Bitboard position (parent ^ child).
+    // At most three bits change (a piece leaves, a piece arrives, a piece is removed), so a move
+    // packs into an int as three 6-bit bit indices in ascending order, with 63 marking an unused slot.
+    private static final int UNUSED = 63;
+    public static final int NONE = UNUSED | UNUSED << 6 | UNUSED << 12; // No move, e.g. an empty transposition table slot
+
+    private Move() {
+    }
+
+    public static int encode(long delta) {
+        int move = NONE;
+        for (int slot = 0; delta != 0; slot++, delta &= delta - 1) {
+            int shift = 6 * slot;
+            move = (move & ~(UNUSED << shift)) | Long.numberOfTrailingZeros(delta) << shift;
+        }
+        return move;
+    }
+
+    public static long delta(int move) { // Mask of the bits the move flips
+        long delta = 0;
+        for (int slot = 0; slot < 3; slot++) {
+            int bit = (move >>> (6 * slot)) & UNUSED;
+            if (bit != UNUSED) delta |= 1L << bit;
+        }
+        return delta;
+    }
+
+    public static int between(long parent, long child) { // The move that turns parent into child
+        return encode(parent ^ child);
+    }
+
+    public static long apply(long position, int move) { // Flipping the same bits again undoes the move
+        return position ^ delta(move);
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+public class MoveOrdering {
+    // Orders the children of a node so the ones most likely to cause a cutoff are searched first:
+    // the transposition table move, then moves that close a mill or capture, then the killer moves
+    // of this ply, then everything else by history score.
+    static final int MAX_PLY = 128;
+    private static final int HASH_MOVE = Integer.MAX_VALUE;
+    private static final int MILL_OR_CAPTURE = 1 << 30;
+    private static final int KILLER = 1 << 29; // History scores are capped below this
+
+    // Moves are compared by the bits they flip (parent ^ child), so no move needs to be encoded while ordering
+    private final long[][] killers = new long[MAX_PLY][2]; // Two most recent quiet moves that caused a cutoff at each ply
+    private final int[] history = new int[1 << 16]; // Cutoff credit, indexed by a hash of the flipped bits
+    private int[] scores = new int[64];
+
+    long cutoffs = 0; // Nodes that failed high
+    long firstMoveCutoffs = 0; // Of those, nodes where the first move searched caused the cutoff
+
+    MoveOrdering() {
+        clear();
+    }
+
+    void clear() {
+        for (long[] killer : killers) {
+            killer[0] = 0;
+            killer[1] = 0;
+        }
+        Arrays.fill(history, 0);
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+
+    void order(long board, PositionList moves, int hashMove, int ply, boolean isWhite) {
+        if (scores.length < moves.size()) scores = new int[moves.size() * 2];
+        long[] killer = killers[Math.min(ply, MAX_PLY - 1)];
+        long hashDelta = hashMove == Move.NONE ? 0 : Move.delta(hashMove);
+        for (int i = 0; i < moves.size(); i++) {
+            long child = moves.get(i);
+            long delta = board ^ child;
+            if (delta == hashDelta) scores[i] = HASH_MOVE;
+            else if (isMillOrCapture(board, child, isWhite)) scores[i] = MILL_OR_CAPTURE + history[index(delta)];
+            else if (delta == killer[0] || delta == killer[1]) scores[i] = KILLER + (delta == killer[0] ? 1 : 0);
+            else scores[i] = history[index(delta)];
+        }
+        moves.sort(scores);
+    }
+
+    void cutoff(long board, long child, int ply, int depth, int index, boolean isWhite) { // Called when child caused a beta cutoff
+        cutoffs++;
+        if (index == 0) firstMoveCutoffs++;
+        long delta = board ^ child;
+        int slot = index(delta);
+        history[slot] = Math.min(history[slot] + depth * depth, KILLER - 1);
+        if (!isMillOrCapture(board, child, isWhite) && ply < MAX_PLY) {
+            long[] killer = killers[ply];
+            if (killer[0] != delta) {
+                killer[1] = killer[0];
+                killer[0] = delta;
+            }
+        }
+    }
+
+    double firstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    private static int index(long delta) { // Multiplicative hash of the flipped bits into the history table
+        return (int) ((delta * 0x9E3779B97F4A7C15L) >>> 48);
+    }
+
+    private static boolean isMillOrCapture(long board, long child, boolean isWhite) {
+        if (Bitboard.pieces(child, !isWhite) != Bitboard.pieces(board, !isWhite)) return true; // An opponent piece was removed
+        int own = Bitboard.pieces(child, isWhite);
+        int arrived = own & ~Bitboard.pieces(board, isWhite);
+        return arrived != 0 && Bitboard.closesMill(Integer.numberOfTrailingZeros(arrived), own);
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OpeningBook {
+    // Best moves for the first placements of the opening, searched once offline so the engines can skip the search.
+    // Every position reachable in fewer than the book's number of placements is stored under its canonical form.
+    // A book belongs to one engine, since the two engines evaluate differently and search different sides:
+    // ABOpening searches its input as white to move, MinimaxOpeningImproved as black to move.
+    // File layout: "MOB1", the engine, the record count, then 16-byte records sorted by key:
+    // Symmetry.canonicalHash (8 bytes), the move in the canonical frame with the depth in the top byte (4 bytes), the score (4 bytes).
+    private static final int MAGIC = 0x4D4F4231; // "MOB1"
+    private static final int HEADER_BYTES = 12;
+    public static final int AB_OPENING = 0, MINIMAX_OPENING = 1; // Engine a book was searched with
+    private static final int RECORD_BYTES = 16;
+
+    private final ByteBuffer records;
+    private final int count;
+
+    private OpeningBook(ByteBuffer records, int count) {
+        this.records = records;
+        this.count = count;
+    }
+
+    public static final class Entry { // A book answer for a position, in the position's own frame
+        final long child; // Position after the best move
+        final int score;
+        final int depth; // Depth the move was searched to
+
+        Entry(long child, int score, int depth) {
+            this.child = child;
+            this.score = score;
+            this.depth = depth;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Input format: java OpeningBook <output file> <placements> <depth> [--engine ab|minimax] [--threads <n>] [--tt-mb <megabytes>]");
+            return;
+        }
+        int placements = Integer.parseInt(args[1]), depth = Integer.parseInt(args[2]);
+        int engine = AB_OPENING, threads = 1, ttMegabytes = 16;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine" -> engine = switch (args[++i]) {
+                    case "ab" -> AB_OPENING;
+                    case "minimax" -> MINIMAX_OPENING;
+                    default -> throw new IllegalArgumentException(args[i]);
+                };
+                case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+                case "--tt-mb" -> ttMegabytes = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException(args[i]);
+            }
+        }
+        build(Path.of(args[0]), engine, placements, depth, threads, ttMegabytes);
+    }
+
+    // ---- Probing ----
+
+    public static OpeningBook open(Path file, int engine) throws IOException { // Fails if the book was built for the other engine
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) throw new IOException(file + " is not an opening book");
+            if (header.getInt() != engine) throw new IOException(file + " was built for the other opening engine");
+            int count = header.getInt();
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) count * RECORD_BYTES), count);
+        } // The mapping stays valid after the channel is closed
+    }
+
+    public Entry probe(long board, boolean isWhite) { // The stored move for board with isWhite to move, or null if it is not in the book
+        int symmetry = Symmetry.canonicalSymmetry(board);
+        long canonical = Symmetry.apply(board, symmetry);
+        long key = Zobrist.hash(canonical, isWhite);
+        int low = 0, high = count - 1;
+        while (low <= high) { // Binary search over the sorted keys, straight from the mapped pages
+            int middle = (low + high) >>> 1;
+            long found = records.getLong(middle * RECORD_BYTES);
+            if (found < key) low = middle + 1;
+            else if (found > key) high = middle - 1;
+            else {
+                int packed = records.getInt(middle * RECORD_BYTES + 8);
+                long child = Symmetry.apply(Move.apply(canonical, packed & 0xFFFFFF), Symmetry.inverse(symmetry));
+                return new Entry(child, records.getInt(middle * RECORD_BYTES + 12), packed >>> 24);
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // ---- Building ----
+
+    private static void build(Path file, int engine, int placements, int depth, int threads, int ttMegabytes) throws IOException, InterruptedException {
+        // Positions after 0, 1, ..., placements - 1 placements, white placing first, one per canonical form
+        List<Long> positions = new ArrayList<>();
+        Set<Long> level = new HashSet<>(List.of(0L));
+        PositionList children = new PositionList();
+        for (int ply = 0; ply < placements; ply++) {
+            positions.addAll(level);
+            Set<Long> next = new HashSet<>();
+            for (long board : level) {
+                children.clear();
+                if (ply % 2 == 0) ABOpening.GenerateMovesOpening(board, children);
+                else ABOpening.GenerateMovesOpeningBlack(board, children);
+                for (int i = 0; i < children.size(); i++) next.add(Symmetry.canonical(children.get(i)));
+            }
+            level = next;
+        }
+        positions.sort(null); // Same work split and output for the same arguments
+
+        int entries = positions.size();
+        boolean isWhite = engine == AB_OPENING;
+        long[] keys = new long[entries];
+        int[] moves = new int[entries], scores = new int[entries];
+        boolean[] found = new boolean[entries];
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            SearchContext context = new SearchContext(engine == AB_OPENING ? TranspositionTable.ofMegabytes(Math.max(1, ttMegabytes / threads), TranspositionTable.Replacement.DEPTH_PREFERRED) : null);
+            workers[t] = new Thread(() -> {
+                for (int e; (e = next.getAndIncrement()) < entries; ) {
+                    long board = positions.get(e);
+                    keys[e] = Zobrist.hash(board, isWhite);
+                    if (engine == AB_OPENING) {
+                        context.table.clear(); // Each position is searched as a fresh ABOpening run would search it
+                        context.ordering.clear();
+                        scores[e] = ABOpening.alphabeta(context, board, keys[e], depth, 0, isWhite, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    } else {
+                        scores[e] = MinimaxOpeningImproved.minimax(context, board, depth, 0, isWhite);
+                    }
+                    long child = context.bestMove(board);
+                    found[e] = child != board;
+                    moves[e] = Move.between(board, child) | depth << 24;
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        Integer[] order = new Integer[entries];
+        int stored = 0;
+        for (int e = 0; e < entries; e++) {
+            if (found[e]) order[stored++] = e; // A full board has no move to store
+        }
+        Arrays.sort(order, 0, stored, Comparator.comparingLong(e -> keys[e]));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(engine);
+            out.writeInt(stored);
+            for (int i = 0; i < stored; i++) {
+                int e = order[i];
+                if (i > 0 && keys[e] == keys[order[i - 1]]) throw new IllegalStateException("Two book positions share the key " + keys[e]);
+                out.writeLong(keys[e]);
+                out.writeInt(moves[e]);
+                out.writeInt(scores[e]);
+            }
+        }
+        System.out.printf("%d positions searched to depth %d in %d ms, %d moves written%n",
+                positions.size(), depth, (System.nanoTime() - start) / 1_000_000, stored);
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Perft {
+    // Counts the move paths of a given length from a position, to check move generators and time them.
+    // Every generated child is a node, duplicates included, and a position without moves ends its paths early.
+    // No position is terminal otherwise: the generators are counted as they are, without the game-over rules of
+    // the evaluations. The last ply is counted from the size of the generated list (bulk counting), so the
+    // nodes per second measure move generation alone, with no search, ordering or evaluation in the loop.
+    // --reference counts again with the original char[] generators and compares, per root move with --divide.
+    private static final int MAX_DEPTH = 64;
+
+    private final boolean opening;
+    private final PositionList[] moves = new PositionList[MAX_DEPTH]; // Children at each ply, reused
+
+    private Perft(boolean opening) {
+        this.opening = opening;
+        for (int ply = 0; ply < MAX_DEPTH; ply++) moves[ply] = new PositionList();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !Bitboard.isBoard(args[0])) {
+            System.out.println("Input format: java Perft <board> <depth> [--phase opening|game] [--black] [--divide] [--reference]");
+            return;
+        }
+        long board = Bitboard.fromString(args[0]);
+        int depth = Integer.parseInt(args[1]);
+        boolean opening = false, isWhite = true, divide = false, reference = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--phase" -> opening = args[++i].equals("opening");
+                case "--black" -> isWhite = false;
+                case "--divide" -> divide = true;
+                case "--reference" -> reference = true;
+                default -> throw new IllegalArgumentException(args[i]);
+            }
+        }
+        if (depth < 1 || depth > MAX_DEPTH) throw new IllegalArgumentException("depth must be between 1 and " + MAX_DEPTH);
+
+        Perft perft = new Perft(opening);
+        long start = System.nanoTime();
+        Map<String, Long> counts = perft.divide(board, depth, isWhite);
+        long elapsed = System.nanoTime() - start;
+        long nodes = 0;
+        for (long count : counts.values()) nodes += count;
+        if (divide) {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+        System.out.println("Nodes: " + nodes);
+        System.out.printf("Time: %.1f ms, %.0f nodes/s%n", elapsed / 1e6, nodes * 1e9 / Math.max(1, elapsed));
+
+        if (reference) {
+            start = System.nanoTime();
+            Map<String, Long> expected = Reference.divide(Bitboard.toString(board).toCharArray(), depth, isWhite, opening);
+            elapsed = System.nanoTime() - start;
+            long expectedNodes = 0;
+            for (long count : expected.values()) expectedNodes += count;
+            System.out.printf("Reference nodes: %d, %.1f ms, %.0f nodes/s%n", expectedNodes, elapsed / 1e6, expectedNodes * 1e9 / Math.max(1, elapsed));
+            boolean same = expected.equals(counts);
+            if (!same && divide) {
+                for (String child : expected.keySet()) {
+                    if (!expected.get(child).equals(counts.get(child))) System.out.println("Differs: " + child + ": " + counts.get(child) + " (reference " + expected.get(child) + ")");
+                }
+                for (String child : counts.keySet()) {
+                    if (!expected.containsKey(child)) System.out.println("Differs: " + child + ": " + counts.get(child) + " (reference none)");
+                }
+            }
+            System.out.println(same ? "Counts match the reference" : "Counts DIFFER from the reference");
+            if (!same) System.exit(1);
+        }
+    }
+
+    private Map<String, Long> divide(long board, int depth, boolean isWhite) { // Node count below each distinct root child
+        Map<String, Long> counts = new LinkedHashMap<>();
+        PositionList children = new PositionList();
+        generate(board, isWhite, children);
+        for (int i = 0; i < children.size(); i++) {
+            long child = children.get(i);
+            counts.merge(Bitboard.toString(child), depth == 1 ? 1 : count(child, depth - 1, 0, !isWhite), Long::sum);
+        }
+        return counts;
+    }
+
+    private long count(long board, int depth, int ply, boolean isWhite) {
+        PositionList children = moves[ply];
+        children.clear();
+        generate(board, isWhite, children);
+        if (depth == 1) return children.size(); // Bulk counting
+        long nodes = 0;
+        for (int i = 0; i < children.size(); i++) {
+            nodes += count(children.get(i), depth - 1, ply + 1, !isWhite);
+        }
+        return nodes;
+    }
+
+    private void generate(long board, boolean isWhite, PositionList L) {
+        if (!opening) Bitboard.GenerateMovesMidEndGame(board, isWhite, L);
+        else if (isWhite) ABOpening.GenerateMovesOpening(board, L);
+        else ABOpening.GenerateMovesOpeningBlack(board, L);
+    }
+
+    private static final class Reference {
+        // The move generators as they were before the packed Bitboard, on char[] boards, kept as the
+        // reference the faster generators must agree with. Deliberately unoptimized.
+
+        static Map<String, Long> divide(char[] board, int depth, boolean isWhite, boolean opening) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (char[] child : generate(board, isWhite, opening)) {
+                counts.merge(new String(child), depth == 1 ? 1 : count(child, depth - 1, !isWhite, opening), Long::sum);
+            }
+            return counts;
+        }
+
+        private static long count(char[] board, int depth, boolean isWhite, boolean opening) {
+            List<char[]> children = generate(board, isWhite, opening);
+            if (depth == 1) return children.size();
+            long nodes = 0;
+            for (char[] child : children) nodes += count(child, depth - 1, !isWhite, opening);
+            return nodes;
+        }
+
+        private static List<char[]> generate(char[] board, boolean isWhite, boolean opening) {
+            if (!opening) return GenerateMovesMidEndGame(board, isWhite ? 'W' : 'B');
+            if (isWhite) return GenerateAdd(board);
+            List<char[]> blackMoves = new ArrayList<>(); // Black places by inverting the board colors and placing white
+            for (char[] move : GenerateAdd(invertBoardColors(board))) {
+                blackMoves.add(invertBoardColors(move));
+            }
+            return blackMoves;
+        }
+
+        private static char[] invertBoardColors(char[] board) { // Replaces all 'W' with 'B' and 'B' with 'W'
+            char[] invertedBoard = new char[board.length];
+            for (int i = 0; i < board.length; i++) {
+                if (board[i] == 'W') invertedBoard[i] = 'B';
+                else if (board[i] == 'B') invertedBoard[i] = 'W';
+                else invertedBoard[i] = board[i];
+            }
+            return invertedBoard;
+        }
+
+        private static List<char[]> GenerateAdd(char[] board) {
+            List<char[]> L = new ArrayList<>();
+            for (int location = 0; location < board.length; location++) { // For each board location
+                if (board[location] == 'x') { // If empty, duplicate the board and place a white piece at the location
+                    char[] b = board.clone();
+                    b[location] = 'W';
+                    if (closeMill(location, b)) GenerateRemove(b, L);
+                    else L.add(b);
+                }
+            }
+            return L;
+        }
+
+        private static List<char[]> GenerateMovesMidEndGame(char[] board, char piece) {
+            int count = 0;
+            for (char c : board) { // Count the number of pieces on the board
+                if (c == piece) count++;
+            }
+            return count == 3 ? GenerateHopping(board, piece) : GenerateMove(board, piece);
+        }
+
+        private static List<char[]> GenerateMove(char[] board, char piece) {
+            List<char[]> L = new ArrayList<>();
+            for (int location = 0; location < board.length; location++) {
+                if (board[location] == piece) {
+                    for (int j : neighbors(location)) {
+                        if (board[j] == 'x') { // Move the piece to the empty neighbor
+                            char[] b = board.clone();
+                            b[location] = 'x';
+                            b[j] = piece;
+                            if (closeMill(j, b)) GenerateRemove(b, L);
+                            else L.add(b);
+                        }
+                    }
+                }
+            }
+            return L;
+        }
+
+        private static List<char[]> GenerateHopping(char[] board, char piece) {
+            List<char[]> L = new ArrayList<>();
+            for (int alpha = 0; alpha < board.length; alpha++) {
+                if (board[alpha] == piece) {
+                    for (int beta = 0; beta < board.length; beta++) {
+                        if (board[beta] == 'x') { // Move the piece to any empty location
+                            char[] b = board.clone();
+                            b[alpha] = 'x';
+                            b[beta] = piece;
+                            if (closeMill(beta, b)) GenerateRemove(b, L);
+                            else L.add(b);
+                        }
+                    }
+                }
+            }
+            return L;
+        }
+
+        private static void GenerateRemove(char[] board, List<char[]> L) {
+            boolean added = false;
+            for (int location = 0; location < board.length; location++) {
+                if (board[location] == 'B' && !closeMill(location, board)) { // Remove each black piece that is not in a mill
+                    char[] b = board.clone();
+                    b[location] = 'x';
+                    L.add(b);
+                    added = true;
+                }
+            }
+            if (!added) L.add(board); // All black pieces are in mills
+        }
+
+        private static int[] neighbors(int location) {
+            return switch (location) {
+                case 0 -> new int[]{1, 2, 15};
+                case 1 -> new int[]{0, 3, 11};
+                case 2 -> new int[]{0, 3, 4, 12};
+                case 3 -> new int[]{1, 2, 5, 7};
+                case 4 -> new int[]{2, 5, 9};
+                case 5 -> new int[]{3, 4, 6};
+                case 6 -> new int[]{5, 7, 11};
+                case 7 -> new int[]{3, 6, 8, 14};
+                case 8 -> new int[]{1, 7, 17};
+                case 9 -> new int[]{4, 10, 12};
+                case 10 -> new int[]{9, 11, 13};
+                case 11 -> new int[]{6, 10, 14};
+                case 12 -> new int[]{2, 9, 13, 15};
+                case 13 -> new int[]{10, 12, 14, 16};
+                case 14 -> new int[]{7, 11, 13, 17};
+                case 15 -> new int[]{0, 12, 16};
+                case 16 -> new int[]{13, 15, 17};
+                case 17 -> new int[]{8, 14, 16};
+                default -> new int[]{};
+            };
+        }
+
+        private static boolean closeMill(int j, char[] b) {
+            char c = b[j];
+            if (c == 'x') return false;
+            return switch (j) {
+                case 0 -> (b[2] == c && b[4] == c);
+                case 1 -> (b[3] == c && b[5] == c) || (b[8] == c && b[17] == c);
+                case 2 -> (b[0] == c && b[4] == c);
+                case 3 -> (b[1] == c && b[5] == c) || (b[7] == c && b[14] == c);
+                case 4 -> (b[0] == c && b[2] == c);
+                case 5 -> (b[0] == c && b[3] == c) || (b[6] == c && b[11] == c);
+                case 6 -> (b[5] == c && b[11] == c) || (b[7] == c && b[8] == c);
+                case 7 -> (b[3] == c && b[14] == c) || (b[6] == c && b[8] == c);
+                case 8 -> (b[1] == c && b[17] == c) || (b[6] == c && b[7] == c);
+                case 9 -> (b[12] == c && b[15] == c) || (b[10] == c && b[11] == c);
+                case 10 -> (b[9] == c && b[11] == c) || (b[13] == c && b[16] == c);
+                case 11 -> (b[9] == c && b[10] == c) || (b[5] == c && b[6] == c) || (b[14] == c && b[17] == c);
+                case 12 -> (b[15] == c && b[9] == c) || (b[13] == c && b[14] == c);
+                case 13 -> (b[12] == c && b[14] == c) || (b[10] == c && b[16] == c);
+                case 14 -> (b[12] == c && b[13] == c) || (b[11] == c && b[17] == c) || (b[3] == c && b[7] == c);
+                case 15 -> (b[12] == c && b[9] == c) || (b[17] == c && b[16] == c);
+                case 16 -> (b[15] == c && b[17] == c) || (b[10] == c && b[13] == c);
+                case 17 -> (b[15] == c && b[16] == c) || (b[1] == c && b[8] == c) || (b[11] == c && b[14] == c);
+                default -> false;
+            };
+        }
+    }
+}
@@ -0,0 +1,104 @@
+public class PositionFeatures {
+    // Evaluation terms of the positions along the current search path, indexed by ply.
+    // The entry for a child is derived from its parent's entry and the bits the move flips, so a leaf
+    // evaluation reads its counts instead of recounting the board and generating every move.
+    // Going back up the tree needs no work: the parent's entry is still there.
+    private final int[] whiteCount, blackCount; // Pieces of each color
+    private final int[] whiteInMill, blackInMill; // Pieces for which closeMill holds, as masks
+    private final int[] whiteSlides, blackSlides; // (piece, empty neighbor) pairs of each color
+
+    PositionFeatures(int plies) {
+        whiteCount = new int[plies];
+        blackCount = new int[plies];
+        whiteInMill = new int[plies];
+        blackInMill = new int[plies];
+        whiteSlides = new int[plies];
+        blackSlides = new int[plies];
+    }
+
+    void reset(long board) { // Computes the entry for the root at ply 0 from scratch
+        int white = Bitboard.white(board), black = Bitboard.black(board), empty = Bitboard.empty(board);
+        whiteCount[0] = Integer.bitCount(white);
+        blackCount[0] = Integer.bitCount(black);
+        whiteInMill[0] = Bitboard.inMill(white);
+        blackInMill[0] = Bitboard.inMill(black);
+        whiteSlides[0] = 0;
+        blackSlides[0] = 0;
+        for (int w = white; w != 0; w &= w - 1) {
+            whiteSlides[0] += Integer.bitCount(Bitboard.neighbors(Integer.numberOfTrailingZeros(w)) & empty);
+        }
+        for (int b = black; b != 0; b &= b - 1) {
+            blackSlides[0] += Integer.bitCount(Bitboard.neighbors(Integer.numberOfTrailingZeros(b)) & empty);
+        }
+    }
+
+    void make(int ply, long board, long child) { // Derives the entry at ply + 1 for child, a child of board at ply
+        int white = Bitboard.white(board), black = Bitboard.black(board);
+        int newWhite = Bitboard.white(child), newBlack = Bitboard.black(child);
+        int next = ply + 1;
+        int ws = whiteSlides[ply], bs = blackSlides[ply];
+        int empty = Bitboard.empty(board);
+        // Apply the flipped bits one at a time, first the pieces that leave, then the pieces that arrive
+        for (int gone = (white & ~newWhite) | (black & ~newBlack); gone != 0; gone &= gone - 1) {
+            int location = Integer.numberOfTrailingZeros(gone), bit = 1 << location;
+            int neighbors = Bitboard.neighbors(location), neighborOf = Bitboard.neighborOf(location);
+            if ((white & bit) != 0) {
+                ws -= Integer.bitCount(neighbors & empty);
+                white ^= bit;
+            } else {
+                bs -= Integer.bitCount(neighbors & empty);
+                black ^= bit;
+            }
+            empty |= bit;
+            ws += Integer.bitCount(neighborOf & white); // These pieces can now slide to the location
+            bs += Integer.bitCount(neighborOf & black);
+        }
+        for (int added = (newWhite & ~white) | (newBlack & ~black); added != 0; added &= added - 1) {
+            int location = Integer.numberOfTrailingZeros(added), bit = 1 << location;
+            int neighbors = Bitboard.neighbors(location), neighborOf = Bitboard.neighborOf(location);
+            empty &= ~bit;
+            ws -= Integer.bitCount(neighborOf & white); // These pieces can no longer slide to the location
+            bs -= Integer.bitCount(neighborOf & black);
+            if ((newWhite & bit) != 0) {
+                ws += Integer.bitCount(neighbors & empty);
+                white |= bit;
+            } else {
+                bs += Integer.bitCount(neighbors & empty);
+                black |= bit;
+            }
+        }
+        whiteSlides[next] = ws;
+        blackSlides[next] = bs;
+        whiteCount[next] = Integer.bitCount(newWhite);
+        blackCount[next] = Integer.bitCount(newBlack);
+        // Only a color whose pieces changed can have different mills
+        whiteInMill[next] = newWhite == Bitboard.white(board) ? whiteInMill[ply] : Bitboard.inMill(newWhite);
+        blackInMill[next] = newBlack == Bitboard.black(board) ? blackInMill[ply] : Bitboard.inMill(newBlack);
+    }
+
+    int whiteCount(int ply) {
+        return whiteCount[ply];
+    }
+
+    int blackCount(int ply) {
+        return blackCount[ply];
+    }
+
+    int whiteMills(int ply) { // Number of white pieces that are part of a mill
+        return Integer.bitCount(whiteInMill[ply]);
+    }
+
+    int blackMills(int ply) {
+        return Integer.bitCount(blackInMill[ply]);
+    }
+
+    int moves(int ply, long board, boolean isWhite) {
+        // Same as Bitboard.GenerateMovesMidEndGame(board, isWhite).size(), where board is the position at ply.
+        // Every (piece, empty destination) pair is one move, except that a move closing a mill
+        // counts once for each black piece GenerateRemove could take.
+        // Bitboard.CountMovesMidEndGame does the same from scratch, here the pairs come from the incremental slide counts.
+        boolean hopping = (isWhite ? whiteCount[ply] : blackCount[ply]) == 3;
+        int count = hopping ? 3 * Integer.bitCount(Bitboard.empty(board)) : isWhite ? whiteSlides[ply] : blackSlides[ply];
+        return count + Bitboard.CountRemoveExtra(board, isWhite, hopping, blackInMill[ply]);
+    }
+}
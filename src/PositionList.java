@@ -0,0 +1,56 @@
+import java.util.Arrays;
+
+public class PositionList { // Growable list of packed Bitboard positions, avoids boxing every child into a Long
+    private long[] positions;
+    private int size;
+
+    PositionList() {
+        this(32);
+    }
+
+    PositionList(int capacity) {
+        positions = new long[capacity];
+    }
+
+    void add(long position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(8, size * 2)); // Double the backing array when full
+        }
+        positions[size++] = position;
+    }
+
+    long get(int index) {
+        return positions[index];
+    }
+
+    void set(int index, long position) {
+        positions[index] = position;
+    }
+
+    void sort(int[] scores) { // Stable insertion sort by descending scores[i], scores is reordered with the positions
+        for (int i = 1; i < size; i++) {
+            long position = positions[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                positions[j + 1] = positions[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            positions[j + 1] = position;
+            scores[j + 1] = score;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+public class QLearning {
+    // Training loop shared by the Q-learning agents. The episodes run on several threads against one QTable,
+    // each thread with an agent of its own: its own buffers, its own SplittableRandom split in thread order from
+    // the seed, and a fixed share of the episodes (thread t runs episodes t, t + threads, ...). So every thread
+    // draws the same random numbers on every run with the same seed and thread count. Updates are not locked
+    // against each other beyond the table's own segment locks: a value read by one thread may be overwritten by
+    // another before it writes its own, and losing such an update costs one step of learning (as in Hogwild
+    // training). Which updates race depends on timing, so only single-thread runs repeat exactly.
+    // Training can write the table to a QTableSnapshot (--out), every --checkpoint episodes along the way and at the
+    // end, and continue from the snapshot it wrote before (--resume). Playing from a snapshot (--table) skips training.
+    // With --replay each thread also keeps its last transitions in a ReplayBuffer and replays a batch after each episode.
+    static final String USAGE = "[--episodes <n>] [--threads <n>] [--seed <n>] [--replay <transitions> [--batch <n>]] [--table <snapshot file>]";
+    static final String TRAIN_USAGE = "train --out <snapshot file> [--resume] [--checkpoint <episodes>] [--episodes <n>] [--threads <n>] [--seed <n>] [--replay <transitions> [--batch <n>]]";
+
+    interface Agent { // One training thread's view of the agent, the Q-table is shared
+        int episode(long episode); // Returns the steps played
+    }
+
+    static final class Options {
+        int episodes;
+        int threads = 1;
+        long seed = System.nanoTime(); // Random unless given
+        String out = null; // Snapshot the training writes, none if null
+        boolean resume = false; // Train on from the snapshot in out if it exists
+        int checkpoint = 0; // Episodes between snapshots during training, 0 writes only the final one
+        String table = null; // Snapshot to play from instead of training
+        int replay = 0; // Transitions each thread remembers for replay, 0 replays nothing
+        int batch = 256; // Transitions replayed after each episode
+
+        Options(int episodes) {
+            this.episodes = episodes;
+        }
+
+        int parse(String[] args, int i) { // Reads the option at args[i] and returns the index after it, or -1 if it is no training option
+            switch (args[i]) {
+                case "--episodes" -> episodes = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--out" -> out = args[++i];
+                case "--resume" -> resume = true;
+                case "--checkpoint" -> checkpoint = Math.max(0, Integer.parseInt(args[++i]));
+                case "--table" -> table = args[++i];
+                case "--replay" -> replay = Math.max(0, Integer.parseInt(args[++i]));
+                case "--batch" -> batch = Math.max(1, Integer.parseInt(args[++i]));
+                default -> {
+                    return -1;
+                }
+            }
+            return i + 1;
+        }
+
+        ReplayBuffer replayBuffer() { // A new buffer for one training thread, null without --replay
+            if (replay == 0) return null;
+            int capacity = Math.min(replay, ReplayBuffer.MAX_CAPACITY);
+            return new ReplayBuffer(capacity, Math.min(batch, capacity));
+        }
+    }
+
+    private QLearning() {
+    }
+
+    static QValues values(Options options, QTableSnapshot.Header header, BiFunction<QTable, SplittableRandom, Agent> agents) throws IOException {
+        // The Q-values to play with: the snapshot given by --table, or a table trained now
+        if (options.table != null) {
+            QTableSnapshot snapshot = QTableSnapshot.open(Path.of(options.table), header.agent);
+            System.out.println("Playing from " + options.table + ": " + snapshot.size() + " pairs, " + snapshot.header.episodes + " episodes of training");
+            return snapshot;
+        }
+        return train(options, header, agents);
+    }
+
+    static QTable train(Options options, QTableSnapshot.Header header, BiFunction<QTable, SplittableRandom, Agent> agents) throws IOException {
+        // header holds the agent's hyperparameters, the rest is filled in here
+        QTable table = new QTable(1 << 16, options.threads == 1 ? 1 : 4 * options.threads); // Enough segments that threads seldom wait on each other
+        Path out = options.out == null ? null : Path.of(options.out);
+        if (options.resume && out != null && Files.exists(out)) {
+            QTableSnapshot previous = QTableSnapshot.open(out, header.agent);
+            previous.copyTo(table);
+            header.episodes = previous.header.episodes;
+        }
+        header.seed = options.seed;
+        header.threads = options.threads;
+        SplittableRandom seeds = new SplittableRandom(options.seed);
+        Agent[] workers = new Agent[options.threads];
+        for (int t = 0; t < workers.length; t++) workers[t] = agents.apply(table, seeds.split());
+        long start = System.nanoTime(), steps = 0;
+        long first = header.episodes, end = first + options.episodes; // Episode numbers continue over resumed runs
+        int round = options.checkpoint > 0 && out != null ? options.checkpoint : options.episodes;
+        for (long from = first; from < end; from += round) {
+            steps += run(workers, from, Math.min(from + round, end));
+            header.episodes = Math.min(from + round, end);
+            if (out != null) QTableSnapshot.write(out, table, header);
+            if (out != null && header.episodes < end) System.out.println("Checkpoint: " + header.episodes + " episodes, " + table.size() + " pairs written to " + out);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Trained %d episodes on %d threads in %.1f ms (%.0f episodes/s, %.1f steps per episode, %.0f ns per step and thread)%n",
+                options.episodes, workers.length, elapsed / 1e6, options.episodes * 1e9 / Math.max(1, elapsed),
+                (double) steps / Math.max(1, options.episodes), (double) elapsed * workers.length / Math.max(1, steps));
+        return table;
+    }
+
+    private static long run(Agent[] workers, long from, long to) { // Plays episodes from to to, split over the workers, returns the steps
+        long steps = 0;
+        if (workers.length == 1) {
+            for (long episode = from; episode < to; episode++) steps += workers[0].episode(episode);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workers.length);
+            try {
+                List<Future<Long>> running = new ArrayList<>();
+                for (int t = 0; t < workers.length; t++) {
+                    Agent agent = workers[t];
+                    long first = from + t;
+                    running.add(pool.submit(() -> {
+                        long played = 0;
+                        for (long episode = first; episode < to; episode += workers.length) played += agent.episode(episode);
+                        return played;
+                    }));
+                }
+                for (Future<Long> worker : running) steps += worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Training interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return steps;
+    }
+}
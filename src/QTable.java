@@ -0,0 +1,161 @@
+import java.util.concurrent.locks.StampedLock;
+
+public class QTable implements QValues {
+    // Q-values of state-action pairs for the learning agents, in primitive arrays instead of nested maps of strings.
+    // A pair packs into one long: the white mask in bits 0-17, the black mask in bits 18-35 and the move
+    // (Move.between state and the position it leads to) in bits 36-53. A move always flips a bit, so no pair
+    // packs to 0, which marks an empty slot. Open addressing with linear probing; the arrays double when three
+    // quarters full, so an entry costs 12 bytes of key and value plus the free slots, and reading or updating
+    // a value allocates nothing.
+    // Safe for several training threads: the pairs are striped over segments by hash, each its own table
+    // behind a StampedLock. Writers lock their segment, readers read optimistically and retry under the read lock
+    // only if a write got in the way. A get followed by a put is not atomic, see QLearning.
+    public static final float MISSING = Float.NaN; // get result for a pair that was never stored
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    interface PairConsumer {
+        void accept(long key, float value);
+    }
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock(); // Guards keys, values and size
+        long[] keys;
+        float[] values;
+        int size;
+
+        Segment(int slots) {
+            keys = new long[slots];
+            values = new float[slots];
+        }
+
+        float find(long key, long hash) { // Also run without the lock, so it reads each array once and never indexes past either
+            long[] keys = this.keys;
+            float[] values = this.values;
+            int mask = keys.length - 1;
+            if (values.length != keys.length) return MISSING; // Caught halfway through grow, the caller retries
+            for (int i = slot(hash, mask); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return values[i];
+                if (k == 0) return MISSING;
+            }
+        }
+
+        void put(long key, long hash, float value) {
+            int mask = keys.length - 1;
+            int i = slot(hash, mask);
+            for (long k; (k = keys[i]) != 0; i = (i + 1) & mask) {
+                if (k == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size > keys.length / 4 * 3) grow();
+        }
+
+        private void grow() {
+            if (keys.length == MAX_SEGMENT_CAPACITY) throw new IllegalStateException("Q-table segment is full at " + size + " pairs");
+            long[] oldKeys = keys;
+            float[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            float[] newValues = new float[oldValues.length * 2];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                long key = oldKeys[j];
+                if (key == 0) continue;
+                int i = slot(hash(key), mask);
+                while (newKeys[i] != 0) i = (i + 1) & mask;
+                newKeys[i] = key;
+                newValues[i] = oldValues[j];
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+
+    public QTable() {
+        this(1 << 16, 1);
+    }
+
+    public QTable(int capacity, int segments) { // Both are rounded up to powers of two
+        int count = powerOfTwo(Math.min(segments, 64));
+        this.segments = new Segment[count];
+        segmentMask = count - 1;
+        int slots = powerOfTwo(Math.min(Math.max(capacity / count, 16), MAX_SEGMENT_CAPACITY));
+        for (int s = 0; s < count; s++) this.segments[s] = new Segment(slots);
+    }
+
+    private static int powerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    static long key(long state, long action) { // action is the position the move leads to
+        return Bitboard.white(state) | (long) Bitboard.black(state) << 18 | (long) Move.between(state, action) << 36;
+    }
+
+    static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L; // Fibonacci hashing, the high bits mix every bit of the key
+    }
+
+    static int slot(long hash, int mask) {
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> 58) & segmentMask];
+    }
+
+    public float get(long state, long action) { // The stored value, or MISSING
+        long key = key(state, action), hash = hash(key);
+        Segment segment = segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        float value = segment.find(key, hash);
+        if (!segment.lock.validate(stamp)) { // A writer changed the segment meanwhile
+            stamp = segment.lock.readLock();
+            try {
+                value = segment.find(key, hash);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    public void put(long state, long action, float value) {
+        putKey(key(state, action), value);
+    }
+
+    void putKey(long key, float value) {
+        long hash = hash(key);
+        Segment segment = segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            segment.put(key, hash, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    void forEach(PairConsumer consumer) { // Every stored pair, each segment read under its lock
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                for (int i = 0; i < segment.keys.length; i++) {
+                    if (segment.keys[i] != 0) consumer.accept(segment.keys[i], segment.values[i]);
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    public long size() { // Exact once no thread writes any more
+        long size = 0;
+        for (Segment segment : segments) size += segment.size;
+        return size;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class QTableSnapshot implements QValues {
+    // A trained Q-table on disk, mapped back for play so an agent answers in milliseconds without retraining,
+    // and its lookups read the page cache instead of a copy in the heap.
+    // File layout, big-endian: a HEADER_BYTES header ("MQTB", the format version, the agent, the slot count,
+    // the pair count, the episodes trained, the seed and threads of the last run, then the learning rate,
+    // discount and exploration rate as doubles), then the keys of all slots as longs and the values as floats.
+    // The slots are one open-addressing table with QTable's keys, hash and linear probing, filled at most three
+    // quarters, so a lookup probes the mapped file directly. Slots are mapped in chunks, a mapping holds under 2 GB.
+    private static final int MAGIC = 0x4D515442; // "MQTB"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 128;
+    public static final int GAME = 0, OPENING = 1; // Agent a table was trained for
+    private static final int CHUNK_BITS = 27; // Slots per mapped chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int MAX_SLOTS = 1 << 30;
+
+    static final class Header { // What a table was trained for and with
+        final int agent;
+        final double learningRate, discount, exploration;
+        long episodes = 0; // Over all runs that trained the table
+        long seed = 0; // Of the last run
+        int threads = 1; // Of the last run
+
+        Header(int agent, double learningRate, double discount, double exploration) {
+            this.agent = agent;
+            this.learningRate = learningRate;
+            this.discount = discount;
+            this.exploration = exploration;
+        }
+    }
+
+    final Header header;
+    private final long size;
+    private final int mask;
+    private final LongBuffer[] keys;
+    private final FloatBuffer[] values;
+
+    private QTableSnapshot(Header header, long size, int mask, LongBuffer[] keys, FloatBuffer[] values) {
+        this.header = header;
+        this.size = size;
+        this.mask = mask;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    public static QTableSnapshot open(Path file, int agent) throws IOException { // Fails if the table was trained for the other agent
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (head.getInt() != MAGIC) throw new IOException(file + " is not a Q-table snapshot");
+            int version = head.getInt();
+            if (version != VERSION) throw new IOException(file + " has format version " + version + ", expected " + VERSION);
+            if (head.getInt() != agent) throw new IOException(file + " was trained for the other agent");
+            int slots = head.getInt();
+            long size = head.getLong(), episodes = head.getLong(), seed = head.getLong();
+            int threads = head.getInt();
+            Header header = new Header(agent, head.getDouble(), head.getDouble(), head.getDouble());
+            header.episodes = episodes;
+            header.seed = seed;
+            header.threads = threads;
+            LongBuffer[] keys = new LongBuffer[chunks(slots)];
+            FloatBuffer[] values = new FloatBuffer[chunks(slots)];
+            map(channel, FileChannel.MapMode.READ_ONLY, slots, keys, values);
+            return new QTableSnapshot(header, size, slots - 1, keys, values);
+        } // The mappings stay valid after the channel is closed
+    }
+
+    private static int chunks(int slots) {
+        return (slots + CHUNK_MASK) >>> CHUNK_BITS;
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int slots, LongBuffer[] keys, FloatBuffer[] values) throws IOException {
+        MappedByteBuffer[] mappings = new MappedByteBuffer[2 * keys.length];
+        for (int c = 0; c < keys.length; c++) {
+            long first = (long) c << CHUNK_BITS;
+            int count = (int) Math.min(slots - first, 1 << CHUNK_BITS);
+            mappings[2 * c] = channel.map(mode, HEADER_BYTES + first * 8, count * 8L);
+            mappings[2 * c + 1] = channel.map(mode, HEADER_BYTES + slots * 8L + first * 4, count * 4L);
+            keys[c] = mappings[2 * c].asLongBuffer();
+            values[c] = mappings[2 * c + 1].asFloatBuffer();
+        }
+        return mappings;
+    }
+
+    public float get(long state, long action) { // The stored value, or QTable.MISSING
+        long key = QTable.key(state, action);
+        for (int i = QTable.slot(QTable.hash(key), mask); ; i = (i + 1) & mask) {
+            long k = keys[i >>> CHUNK_BITS].get(i & CHUNK_MASK);
+            if (k == key) return values[i >>> CHUNK_BITS].get(i & CHUNK_MASK);
+            if (k == 0) return QTable.MISSING;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    void copyTo(QTable table) { // Loads every pair into a table, to train on from here
+        for (int i = 0; i <= mask; i++) {
+            long k = keys[i >>> CHUNK_BITS].get(i & CHUNK_MASK);
+            if (k != 0) table.putKey(k, values[i >>> CHUNK_BITS].get(i & CHUNK_MASK));
+        }
+    }
+
+    static void write(Path file, QTable table, Header header) throws IOException {
+        // Written to a temporary file first and moved over file, so a crash mid-write leaves the last snapshot intact
+        long size = table.size();
+        int slots = 16;
+        while (slots < MAX_SLOTS && size > slots / 4 * 3) slots *= 2;
+        if (size > slots / 4 * 3) throw new IllegalStateException(size + " pairs do not fit in a snapshot");
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+            head.putInt(MAGIC).putInt(VERSION).putInt(header.agent).putInt(slots);
+            head.putLong(size).putLong(header.episodes).putLong(header.seed).putInt(header.threads);
+            head.putDouble(header.learningRate).putDouble(header.discount).putDouble(header.exploration);
+            head.clear();
+            channel.write(head, 0);
+            LongBuffer[] keys = new LongBuffer[chunks(slots)];
+            FloatBuffer[] values = new FloatBuffer[chunks(slots)];
+            MappedByteBuffer[] mappings = map(channel, FileChannel.MapMode.READ_WRITE, slots, keys, values); // Grows the file, zero filled
+            int mask = slots - 1;
+            table.forEach((key, value) -> {
+                int i = QTable.slot(QTable.hash(key), mask);
+                while (keys[i >>> CHUNK_BITS].get(i & CHUNK_MASK) != 0) i = (i + 1) & mask;
+                keys[i >>> CHUNK_BITS].put(i & CHUNK_MASK, key);
+                values[i >>> CHUNK_BITS].put(i & CHUNK_MASK, value);
+            });
+            for (MappedByteBuffer mapping : mappings) mapping.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,3 @@
+public interface QValues { // Read access to Q-values, from a QTable being trained or a mapped QTableSnapshot
+    float get(long state, long action); // The stored value, or QTable.MISSING
+}
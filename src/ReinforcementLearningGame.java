@@ -1,5 +1,5 @@
 import java.io.*;
-import java.util.*;
+import java.util.SplittableRandom;
 
 public class ReinforcementLearningGame {
     private static final double ALPHA = 0.1; // Learning rate
@@ -7,11 +7,43 @@ public class ReinforcementLearningGame {
     private static final double EPSILON = 0.1; // Exploration rate
     private static final int EPISODES = 10000; // Number of training episodes
 
-    private static final Map<String, Map<String, Double>> qTable = new HashMap<>(); // Q-table
+    private final QValues qValues; // Q-values by packed state and action, shared by the agents of one training run
+    private final QTable qTable; // The same table for updates, null when playing from a snapshot
+    private final MillEnvironment environment = new MillEnvironment(); // The game being played, it also holds the actions of the side to move
+    private final SplittableRandom random;
+    private final ReplayBuffer replayBuffer; // Transitions to learn from again, null without --replay
+    private final double[] replayTargets; // Max future Q-value of each replayed transition's next state
+    private long best; // Best action and its value from the last scan, NEGATIVE_INFINITY if no action had a value
+    private float bestValue;
+    private boolean scanned = false; // Whether the last scan was of the environment's current state
+
+    ReinforcementLearningGame(QValues qValues, SplittableRandom random, ReplayBuffer replayBuffer) { // One per training thread, or one to play
+        this.qValues = qValues;
+        this.qTable = qValues instanceof QTable table ? table : null;
+        this.random = random;
+        this.replayBuffer = replayBuffer;
+        this.replayTargets = replayBuffer == null ? null : new double[replayBuffer.batch().length];
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.out.println("Input format: java ReinforcementLearningGame <input board file> <output board file> <depth>");
+        QLearning.Options options = new QLearning.Options(EPISODES);
+        boolean train = args.length > 0 && args[0].equals("train"); // Only train and write the snapshot
+        try {
+            if (!train && args.length < 3) throw new IllegalArgumentException();
+            for (int i = train ? 1 : 3; i < args.length; ) {
+                int next = options.parse(args, i);
+                if (next < 0) throw new IllegalArgumentException(args[i]);
+                i = next;
+            }
+            if (train && options.out == null) throw new IllegalArgumentException("train needs --out");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Input format: java ReinforcementLearningGame <input board file> <output board file> <depth> " + QLearning.USAGE);
+            System.out.println("         or: java ReinforcementLearningGame " + QLearning.TRAIN_USAGE);
+            return;
+        }
+        QTableSnapshot.Header header = new QTableSnapshot.Header(QTableSnapshot.GAME, ALPHA, GAMMA, EPSILON);
+        if (train) {
+            QLearning.train(options, header, (table, random) -> new ReinforcementLearningGame(table, random, options.replayBuffer())::trainEpisode);
             return;
         }
         String inputPositions = args[0];
@@ -22,11 +54,12 @@ public class ReinforcementLearningGame {
         String boardPosition = reader.readLine();
         reader.close();
 
-        // Train the agent
-        trainAgent();
+        // Train the agent, unless it plays from a snapshot
+        QValues qValues = QLearning.values(options, header, (table, random) -> new ReinforcementLearningGame(table, random, options.replayBuffer())::trainEpisode);
 
         // Use the trained agent to play the game
-        Result bestMove = findBestMove(boardPosition.toCharArray());
+        ReinforcementLearningGame agent = new ReinforcementLearningGame(qValues, new SplittableRandom(options.seed), null);
+        Result bestMove = agent.findBestMove(Bitboard.fromString(boardPosition));
 
         BufferedWriter writer = new BufferedWriter(new FileWriter(outputPositions));
         writer.write(bestMove.board);
@@ -35,141 +68,108 @@ public class ReinforcementLearningGame {
         System.out.println("Board Position: " + bestMove.board);
     }
 
-    private static void trainAgent() {
-        for (int episode = 0; episode < EPISODES; episode++) {
-            char[] board = initializeBoard();
-            boolean isWhite = false;
-            while (!isGameOver(board)) {
-                String state = new String(board);
-                String action;
-                if (Math.random() < EPSILON) {
-                    // Exploration: choose a random action
-                    action = getRandomAction(state, isWhite);
-                } else {
-                    // Exploitation: choose the best action based on Q-values
-                    action = getBestAction(state, isWhite);
-                }
-                char[] newBoard = applyAction(board, action);
-                String newState = new String(newBoard);
-                int reward = getReward(newBoard, isWhite);
-                updateQTable(state, action, reward, newState);
-                board = newBoard;
-                isWhite = !isWhite;
+    private int trainEpisode(long episode) {
+        environment.reset(episode % 2 == 0); // Whole games from the empty board, the sides take turns starting
+        scanned = false;
+        while (!environment.isOver()) {
+            long board = environment.board();
+            boolean isWhite = environment.whiteToMove();
+            long action; // An action is the position the move leads to
+            if (random.nextDouble() < EPSILON) {
+                // Exploration: choose a random action
+                action = getRandomAction(board);
+            } else {
+                // Exploitation: choose the best action based on Q-values
+                action = getBestAction(board);
             }
+            scanned = false;
+            environment.step(action);
+            int reward = getReward(isWhite);
+            updateQTable(board, action, reward);
         }
+        int plies = environment.ply();
+        if (replayBuffer != null) replay();
+        return plies;
     }
 
-    private static char[] initializeBoard() {
-        // Initialize the board to the starting position
-        return "xxxxxxxxxxxxxxxxxxxxx".toCharArray();
-    }
-
-    private static boolean isGameOver(char[] board) {
-        // Check if the game is over
-        int whiteCount = 0, blackCount = 0;
-        for (char c : board) {
-            if (c == 'W') whiteCount++;
-            else if (c == 'B') blackCount++;
-        }
-        return whiteCount <= 2 || blackCount <= 2 || generateMoves(board, 'W').isEmpty() || generateMoves(board, 'B').isEmpty();
-    }
-
-    private static String getRandomAction(String state, boolean isWhite) {
-        List<String> actions = getPossibleActions(state, isWhite);
-        return actions.get(new Random().nextInt(actions.size()));
+    private long getRandomAction(long board) {
+        PositionList actions = environment.actions();
+        return actions.isEmpty() ? board : actions.get(random.nextInt(actions.size()));
     }
 
-    private static String getBestAction(String state, boolean isWhite) {
-        Map<String, Double> actionValues = qTable.getOrDefault(state, new HashMap<>());
-        if (actionValues.isEmpty()) return getRandomAction(state, isWhite);
-        return actionValues.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(getRandomAction(state, isWhite));
+    private long getBestAction(long board) { // The action with the highest Q-value, a random one if none has a value yet
+        if (!scanned) scan(board); // Usually done already by the update of the step before
+        if (bestValue != Float.NEGATIVE_INFINITY) return best;
+        return getRandomAction(board);
     }
 
-    private static List<String> getPossibleActions(String state, boolean isWhite) {
-        // Generate all possible actions for the current state
-        List<char[]> moves = generateMoves(state.toCharArray(), isWhite ? 'W' : 'B');
-        List<String> actions = new ArrayList<>();
-        for (char[] move : moves) {
-            actions.add(new String(move));
-        }
-        return actions;
+    private double getMaxQValue(long board) { // Highest Q-value of the actions from board, 0 if none has a value yet
+        scan(board); // The environment has already moved to board, the next step exploits this scan
+        scanned = true;
+        return bestValue == Float.NEGATIVE_INFINITY ? 0.0 : bestValue;
     }
 
-    private static List<char[]> generateMoves(char[] board, char piece) {
-        List<char[]> positions = new ArrayList<>();
-        for (int location = 0; location < board.length; location++) {
-            if (board[location] == piece) {
-                int[] neighbors = neighbors(location);
-                for (int j : neighbors) {
-                    if (board[j] == 'x') {
-                        char[] b = board.clone();
-                        b[location] = 'x';
-                        b[j] = piece;
-                        positions.add(b);
-                    }
-                }
+    private void scan(long board) { // One pass over the actions from board for both the best action and its value
+        PositionList actions = environment.actions();
+        best = 0;
+        bestValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < actions.size(); i++) {
+            float value = qValues.get(board, actions.get(i));
+            if (value > bestValue) { // False for QTable.MISSING
+                bestValue = value;
+                best = actions.get(i);
             }
         }
-        return positions;
     }
 
-    private static int[] neighbors(int location) { // Given a location, return all its neighbors
-        return switch (location) {
-            case 0 -> new int[]{1, 2, 15};
-            case 1 -> new int[]{0, 3, 11};
-            case 2 -> new int[]{0, 3, 4, 12};
-            case 3 -> new int[]{1, 2, 5, 7};
-            case 4 -> new int[]{2, 5, 9};
-            case 5 -> new int[]{3, 4, 6};
-            case 6 -> new int[]{5, 7, 11};
-            case 7 -> new int[]{3, 6, 8, 14};
-            case 8 -> new int[]{1, 7, 17};
-            case 9 -> new int[]{4, 10, 12};
-            case 10 -> new int[]{9, 11, 13};
-            case 11 -> new int[]{6, 10, 14};
-            case 12 -> new int[]{2, 9, 13, 15};
-            case 13 -> new int[]{10, 12, 14, 16};
-            case 14 -> new int[]{7, 11, 13, 17};
-            case 15 -> new int[]{0, 12, 16};
-            case 16 -> new int[]{13, 15, 17};
-            case 17 -> new int[]{8, 14, 16};
-            default -> new int[]{};
+    private int getReward(boolean isWhite) { // Reward of the side that just moved
+        return switch (environment.result()) {
+            case MillEnvironment.WHITE_WINS -> isWhite ? 100 : -100;
+            case MillEnvironment.BLACK_WINS -> isWhite ? -100 : 100;
+            default -> 0; // Running or drawn
         };
     }
 
-    private static char[] applyAction(char[] board, String action) {
-        return action.toCharArray();
-    }
-
-    private static int getReward(char[] board, boolean isWhite) {
-        if (isGameOver(board)) {
-            int whiteCount = 0, blackCount = 0;
-            for (char c : board) {
-                if (c == 'W') whiteCount++;
-                else if (c == 'B') blackCount++;
-            }
-            if (whiteCount <= 2) return isWhite ? -100 : 100;
-            if (blackCount <= 2) return isWhite ? 100 : -100;
-            if (generateMoves(board, 'W').isEmpty()) return isWhite ? -100 : 100;
-            if (generateMoves(board, 'B').isEmpty()) return isWhite ? 100 : -100;
+    private void updateQTable(long state, long action, int reward) { // action is also the new state, the environment is there now
+        double maxFutureQValue = environment.isOver() ? 0.0 : getMaxQValue(action); // Nothing follows the end of the game
+        learn(state, action, reward, maxFutureQValue);
+        if (replayBuffer != null) {
+            // The info word keeps what generating the actions of the new state needs: side to move and pieces in hand
+            int info = environment.isOver() ? ReplayBuffer.TERMINAL
+                    : (environment.whiteToMove() ? 2 : 0) | environment.whiteInHand() << 2 | environment.blackInHand() << 6;
+            replayBuffer.add(state, action, reward, action, info);
         }
-        return 0;
     }
 
-    private static void updateQTable(String state, String action, int reward, String newState) {
-        double oldQValue = qTable.getOrDefault(state, new HashMap<>()).getOrDefault(action, 0.0);
-        double maxFutureQValue = qTable.getOrDefault(newState, new HashMap<>()).values().stream().max(Double::compare).orElse(0.0);
+    private void learn(long state, long action, double reward, double maxFutureQValue) {
+        float oldQValue = qTable.get(state, action);
+        if (Float.isNaN(oldQValue)) oldQValue = 0;
         double newQValue = oldQValue + ALPHA * (reward + GAMMA * maxFutureQValue - oldQValue);
-        qTable.computeIfAbsent(state, k -> new HashMap<>()).put(action, newQValue);
+        qTable.put(state, action, (float) newQValue);
     }
 
-    private static Result findBestMove(char[] board) {
-        String state = new String(board);
-        String bestAction = getBestAction(state, false);
-        return new Result(bestAction, 0, 0); // Static estimate and positions not used in RL
+    private void replay() { // Learns again from a batch of remembered transitions, the game is over so the environment is free
+        int count = replayBuffer.sample(random);
+        int[] batch = replayBuffer.batch(), group = replayBuffer.group();
+        for (int j = 0; j < count; j++) { // Targets first, one scan per next state
+            int i = batch[j], info = replayBuffer.info(i);
+            if ((info & ReplayBuffer.TERMINAL) != 0) replayTargets[j] = 0.0;
+            else if (group[j] != j) replayTargets[j] = replayTargets[group[j]];
+            else {
+                environment.set(replayBuffer.next(i), (info & 2) != 0, info >>> 2 & 15, info >>> 6 & 15);
+                replayTargets[j] = getMaxQValue(replayBuffer.next(i));
+            }
+        }
+        for (int j = 0; j < count; j++) {
+            int i = batch[j];
+            learn(replayBuffer.state(i), replayBuffer.action(i), replayBuffer.reward(i), replayTargets[j]);
+        }
     }
-}
 
+    Result findBestMove(long board) { // Black to move in the midgame, no pieces left in hand
+        environment.set(board, false, 0, 0);
+        scanned = false;
+        long bestAction = getBestAction(board);
+        return new Result(Bitboard.toString(bestAction), 0, 0); // Static estimate and positions not used in RL
+    }
+}
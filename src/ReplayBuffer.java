@@ -0,0 +1,104 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class ReplayBuffer {
+    // Experience replay for the Q-learning agents: a ring of the last capacity transitions in primitive arrays
+    // (state, action, reward, next state and an info word), so remembering a step allocates nothing. The agents
+    // still learn from every step as it is played, and replay a batch sampled from the ring after each episode,
+    // which also learns again from the rare transitions that end a game.
+    // Most of a replayed update is the max over the next state's actions: generating them and looking each one up.
+    // So the transitions of a batch are grouped by next state and info word, and the agent scans a next state once
+    // for its whole group; the targets of a group are taken before its updates, as a batch update does. Openings and
+    // common positions repeat often in a sample. Grouping goes through a small hash set of the batch's next states
+    // rather than a sort, which measured slower than the scans it saved.
+    // Each training thread keeps a ring of its own, so nothing here is shared or locked.
+    static final int TERMINAL = 1; // Info bit: nothing follows the next state, its value is 0
+    static final int MAX_CAPACITY = 1 << 26; // 32 bytes a transition, 2 GB
+
+    private final long[] states, actions, nexts;
+    private final float[] rewards;
+    private final int[] infos; // TERMINAL, the bits above are the agent's, e.g. what it needs to generate the next state's actions
+    private final int capacity;
+    private long added = 0;
+    private final int[] batch; // Ring indices of the last sample
+    private final int[] group; // For each entry of the batch, the first entry with the same next state and info word
+    private final long[] seen; // Next states of the batch by hash, with the entry that brought them in seenAt
+    private final int[] seenAt;
+
+    ReplayBuffer(int capacity, int batch) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) throw new IllegalArgumentException("Replay capacity must be 1 to " + MAX_CAPACITY);
+        if (batch < 1 || batch > capacity) throw new IllegalArgumentException("Replay batch must be 1 to the capacity");
+        this.capacity = capacity;
+        states = new long[capacity];
+        actions = new long[capacity];
+        nexts = new long[capacity];
+        rewards = new float[capacity];
+        infos = new int[capacity];
+        this.batch = new int[batch];
+        group = new int[batch];
+        int slots = Integer.highestOneBit(batch) * 4; // At most half full
+        seen = new long[slots];
+        seenAt = new int[slots];
+    }
+
+    void add(long state, long action, float reward, long next, int info) { // Overwrites the oldest transition once full
+        int i = (int) (added++ % capacity);
+        states[i] = state;
+        actions[i] = action;
+        rewards[i] = reward;
+        nexts[i] = next;
+        infos[i] = info;
+    }
+
+    int size() {
+        return (int) Math.min(added, capacity);
+    }
+
+    int sample(SplittableRandom random) { // Fills batch() and group() with a uniform sample, returns its length, 0 until the ring holds a batch
+        int size = size();
+        if (size < batch.length) return 0;
+        Arrays.fill(seen, 0);
+        int mask = seen.length - 1;
+        for (int j = 0; j < batch.length; j++) {
+            int i = random.nextInt(size);
+            batch[j] = i;
+            long key = nexts[i] ^ (long) infos[i] << 54; // A position leaves bits 54-63 free, and is never empty after a move
+            int s = QTable.slot(QTable.hash(key), mask);
+            while (seen[s] != 0 && seen[s] != key) s = (s + 1) & mask;
+            if (seen[s] == 0) {
+                seen[s] = key;
+                seenAt[s] = j;
+            }
+            group[j] = seenAt[s];
+        }
+        return batch.length;
+    }
+
+    int[] batch() {
+        return batch;
+    }
+
+    int[] group() {
+        return group;
+    }
+
+    long state(int i) {
+        return states[i];
+    }
+
+    long action(int i) {
+        return actions[i];
+    }
+
+    float reward(int i) {
+        return rewards[i];
+    }
+
+    long next(int i) {
+        return nexts[i];
+    }
+
+    int info(int i) {
+        return infos[i];
+    }
+}
@@ -2,6 +2,7 @@ public class Result {
     String board;
     int estimate;
     int positions;
+    SearchStats stats = null; // Statistics of the search that found the move, null for book moves
 
     Result(String board, int estimate, int positions) {
         this.board = board;
@@ -0,0 +1,7 @@
+public class SearchAbortedException extends RuntimeException { // Unwinds a search that ran out of time
+    private static final long serialVersionUID = 1L;
+
+    SearchAbortedException() {
+        super(null, null, false, false); // No stack trace, it is thrown from deep in the recursion on purpose
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.concurrent.ForkJoinPool;
+
+public class SearchContext { // Everything one search thread changes while it searches
+    static final int MAX_PLY = MoveOrdering.MAX_PLY; // Deepest ply the buffers below have room for
+
+    final TranspositionTable table; // Positions already searched, keyed by Zobrist hash
+    Tablebase tablebase = null; // Solved endgames, read-only and shared by every thread
+    ForkJoinPool helpers = null; // On the main thread's context of a multi-thread set: the other threads, made once with the set
+    final MoveOrdering ordering = new MoveOrdering(); // Killer and history tables
+    int positionsEvaluated = 0; // Positions scored by static estimation
+    int tablebaseHits = 0; // Positions scored by the tablebase
+    int nodes = 0; // Nodes visited, used to check the clock every few thousand nodes
+    long interiorNodes = 0; // Nodes whose children were searched, summed into SearchStats
+    long leafNodes = 0; // Nodes scored by static estimation, counted once each unlike positionsEvaluated
+    long ttProbes = 0; // Transposition table lookups
+    long ttHits = 0; // Lookups that found the position
+    long deadline = Long.MAX_VALUE; // System.nanoTime() at which a timed search gives up
+    int depthSearched = 0; // Depth of the last completed iteration
+    volatile boolean stopped = false; // Set by another thread to end this thread's search
+
+    // Reused from node to node so that searching allocates nothing once these have grown to size
+    private final PositionList[] moves = new PositionList[MAX_PLY]; // Children of the node being searched at each ply
+    final long[][] pv = new long[MAX_PLY + 1][MAX_PLY + 1]; // pv[ply] is the best line found from the node at ply, as child positions
+    final int[] pvLength = new int[MAX_PLY + 1];
+    final PositionFeatures features = new PositionFeatures(MAX_PLY + 1); // Evaluation terms of the positions on the current path
+
+    SearchContext(TranspositionTable table) {
+        this.table = table;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            moves[ply] = new PositionList();
+        }
+    }
+
+    void reset() { // Forgets earlier searches, so a reused context searches the next position like a new one
+        if (table != null) table.clear();
+        ordering.clear();
+        startSearch();
+    }
+
+    void startSearch() { // Clears the counters and the stop flag but keeps what earlier searches stored in the tables
+        positionsEvaluated = 0;
+        tablebaseHits = 0;
+        nodes = 0;
+        interiorNodes = 0;
+        leafNodes = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        deadline = Long.MAX_VALUE;
+        depthSearched = 0;
+        stopped = false;
+    }
+
+    void checkTime() {
+        if ((++nodes & 1023) == 0 && (stopped || System.nanoTime() > deadline)) {
+            throw new SearchAbortedException(); // Out of time or stopped, give up on this iteration
+        }
+    }
+
+    PositionList moves(int ply) { // The emptied move buffer for ply
+        PositionList list = moves[ply];
+        list.clear();
+        return list;
+    }
+
+    void updatePv(int ply, long child) { // child is the new best move at ply, followed by the best line below it
+        long[] line = pv[ply];
+        line[0] = child;
+        System.arraycopy(pv[ply + 1], 0, line, 1, pvLength[ply + 1]);
+        pvLength[ply] = pvLength[ply + 1] + 1;
+    }
+
+    long bestMove(long root) { // First move of the principal variation, or root itself if it has no moves
+        return pvLength[0] > 0 ? pv[0][0] : root;
+    }
+}
@@ -0,0 +1,120 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SearchMetrics implements SearchMetricsMXBean {
+    // Running totals of an engine's searches, registered with the platform MBean server as
+    // mill:type=SearchMetrics,engine=<engine> so jconsole or any JMX client can watch a long batch or a server.
+    // Nothing is registered unless asked for, and SearchStats.finish then skips the bookkeeping entirely.
+    private static final Map<String, SearchMetrics> registered = new ConcurrentHashMap<>();
+
+    private final String engine;
+    private long searches, interiorNodes, leafNodes, elapsedNs, betaCutoffs, firstMoveCutoffs, ttProbes, ttHits, tablebaseHits;
+    private int lastDepth;
+    private long lastNodes;
+    private double lastNodesPerSecond, lastBranchingFactor = Double.NaN;
+
+    private SearchMetrics(String engine) {
+        this.engine = engine;
+    }
+
+    static void register(String engine) { // Publishes the metrics of engine, searches finished from now on are counted
+        registered.computeIfAbsent(engine, name -> {
+            SearchMetrics metrics = new SearchMetrics(name);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("mill:type=SearchMetrics,engine=" + name));
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register the search metrics of " + name, e);
+            }
+            return metrics;
+        });
+    }
+
+    static void record(SearchStats stats) {
+        SearchMetrics metrics = registered.get(stats.engine);
+        if (metrics != null) metrics.add(stats);
+    }
+
+    private synchronized void add(SearchStats stats) { // Searches of several workers finish at once
+        searches++;
+        interiorNodes += stats.interiorNodes;
+        leafNodes += stats.leafNodes;
+        elapsedNs += stats.elapsedNs;
+        betaCutoffs += stats.betaCutoffs;
+        firstMoveCutoffs += stats.firstMoveCutoffs;
+        ttProbes += stats.ttProbes;
+        ttHits += stats.ttHits;
+        tablebaseHits += stats.tablebaseHits;
+        int last = stats.iterations.size() - 1;
+        lastDepth = last < 0 ? 0 : stats.iterations.get(last).depth;
+        lastNodes = stats.nodes();
+        lastNodesPerSecond = stats.nodesPerSecond();
+        lastBranchingFactor = last < 0 ? Double.NaN : stats.branchingFactor(last);
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    public synchronized long getInteriorNodes() {
+        return interiorNodes;
+    }
+
+    public synchronized long getLeafNodes() {
+        return leafNodes;
+    }
+
+    public synchronized double getNodesPerSecond() {
+        return elapsedNs == 0 ? 0 : (interiorNodes + leafNodes) * 1e9 / elapsedNs;
+    }
+
+    public synchronized long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    public synchronized double getFirstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    public synchronized long getTableProbes() {
+        return ttProbes;
+    }
+
+    public synchronized double getTableHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    public synchronized long getTablebaseHits() {
+        return tablebaseHits;
+    }
+
+    public synchronized int getLastDepth() {
+        return lastDepth;
+    }
+
+    public synchronized long getLastNodes() {
+        return lastNodes;
+    }
+
+    public synchronized double getLastNodesPerSecond() {
+        return lastNodesPerSecond;
+    }
+
+    public synchronized double getLastBranchingFactor() {
+        return lastBranchingFactor;
+    }
+
+    public synchronized void reset() {
+        searches = interiorNodes = leafNodes = elapsedNs = betaCutoffs = firstMoveCutoffs = ttProbes = ttHits = tablebaseHits = 0;
+        lastDepth = 0;
+        lastNodes = 0;
+        lastNodesPerSecond = 0;
+        lastBranchingFactor = Double.NaN;
+    }
+}
@@ -0,0 +1,31 @@
+public interface SearchMetricsMXBean { // Management view of SearchMetrics, totals since the engine started or was reset
+    String getEngine();
+
+    long getSearches();
+
+    long getInteriorNodes();
+
+    long getLeafNodes();
+
+    double getNodesPerSecond(); // All nodes over the time spent searching
+
+    long getBetaCutoffs();
+
+    double getFirstMoveCutoffRate();
+
+    long getTableProbes();
+
+    double getTableHitRate();
+
+    long getTablebaseHits();
+
+    int getLastDepth(); // Deepest completed iteration of the last search
+
+    long getLastNodes();
+
+    double getLastNodesPerSecond();
+
+    double getLastBranchingFactor(); // Nodes of the last search's final iteration over the one before it, nodes^(1/depth) with a single iteration
+
+    void reset();
+}
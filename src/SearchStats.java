@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+public class SearchStats {
+    // Statistics of one search, summed over the contexts of its threads. The counters themselves are plain fields
+    // of each SearchContext, so the search pays one increment per node; this class takes the differences between
+    // the start of the search and each completed iteration or the end. It also emits the JFR events
+    // mill.SearchIteration and mill.Search once Flight Recorder runs (loading it costs a short run a lot of startup), and feeds
+    // SearchMetrics, the JMX view, if it was enabled for the engine.
+    final String engine;
+    private final SearchContext[] contexts;
+    private final long start = System.nanoTime();
+    private final long[] baseline; // Counter sums when the search started
+    private long iterationStart = start, iterationNodes = 0;
+    private final boolean events = FlightRecorder.isInitialized(); // A recording was started, by -XX:StartFlightRecording or jcmd
+    private IterationEvent iterationEvent;
+    private SearchEvent searchEvent;
+
+    final List<Iteration> iterations = new ArrayList<>(); // Completed iterations, in order of depth
+    long interiorNodes, leafNodes; // Nodes whose children were searched, nodes scored by static estimation
+    long betaCutoffs, firstMoveCutoffs;
+    long ttProbes, ttHits; // Table lookups, and those that found the position
+    long tablebaseHits;
+    long elapsedNs;
+
+    static final class Iteration {
+        final int depth;
+        final long nodes; // Interior and leaf nodes of this iteration alone
+        final long elapsedNs;
+
+        Iteration(int depth, long nodes, long elapsedNs) {
+            this.depth = depth;
+            this.nodes = nodes;
+            this.elapsedNs = elapsedNs;
+        }
+    }
+
+    SearchStats(String engine, SearchContext... contexts) {
+        this.engine = engine;
+        this.contexts = contexts;
+        baseline = totals();
+        if (events) {
+            iterationEvent = new IterationEvent();
+            iterationEvent.begin();
+            searchEvent = new SearchEvent();
+            searchEvent.begin();
+        }
+    }
+
+    private long[] totals() { // interior, leaf, cutoffs, first move cutoffs, probes, hits, tablebase hits
+        // Helper threads may still be counting while an iteration ends, so per-iteration sums over several threads are approximate
+        long[] totals = new long[7];
+        for (SearchContext context : contexts) {
+            totals[0] += context.interiorNodes;
+            totals[1] += context.leafNodes;
+            totals[2] += context.ordering.cutoffs;
+            totals[3] += context.ordering.firstMoveCutoffs;
+            totals[4] += context.ttProbes;
+            totals[5] += context.ttHits;
+            totals[6] += context.tablebaseHits;
+        }
+        return totals;
+    }
+
+    void iteration(int depth) { // Called when the iteration of depth has completed
+        long[] totals = totals();
+        long nodes = totals[0] + totals[1] - baseline[0] - baseline[1];
+        long now = System.nanoTime();
+        Iteration iteration = new Iteration(depth, nodes - iterationNodes, now - iterationStart);
+        iterations.add(iteration);
+        if (events) {
+            if (iterationEvent.shouldCommit()) {
+                iterationEvent.engine = engine;
+                iterationEvent.depth = depth;
+                iterationEvent.nodes = iteration.nodes;
+                iterationEvent.branchingFactor = branchingFactor(iterations.size() - 1);
+                iterationEvent.commit();
+            }
+            iterationEvent = new IterationEvent();
+            iterationEvent.begin();
+        }
+        iterationNodes = nodes;
+        iterationStart = now;
+    }
+
+    Result finish(Result result) { // Takes the final counts and attaches them to the search's result
+        long[] totals = totals();
+        interiorNodes = totals[0] - baseline[0];
+        leafNodes = totals[1] - baseline[1];
+        betaCutoffs = totals[2] - baseline[2];
+        firstMoveCutoffs = totals[3] - baseline[3];
+        ttProbes = totals[4] - baseline[4];
+        ttHits = totals[5] - baseline[5];
+        tablebaseHits = totals[6] - baseline[6];
+        elapsedNs = System.nanoTime() - start;
+        if (events && searchEvent.shouldCommit()) {
+            searchEvent.engine = engine;
+            searchEvent.depth = iterations.isEmpty() ? 0 : iterations.get(iterations.size() - 1).depth;
+            searchEvent.nodes = nodes();
+            searchEvent.nodesPerSecond = nodesPerSecond();
+            searchEvent.betaCutoffs = betaCutoffs;
+            searchEvent.firstMoveCutoffRate = firstMoveCutoffRate();
+            searchEvent.ttHitRate = ttHitRate();
+            searchEvent.commit();
+        }
+        SearchMetrics.record(this);
+        result.stats = this;
+        return result;
+    }
+
+    long nodes() {
+        return interiorNodes + leafNodes;
+    }
+
+    double nodesPerSecond() {
+        return elapsedNs == 0 ? 0 : nodes() * 1e9 / elapsedNs;
+    }
+
+    double firstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    double ttHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    double branchingFactor(int index) {
+        // Nodes of iteration index over those of the iteration before it. The first iteration, often the only one
+        // of a fixed-depth search, has none before it: its nodes^(1/depth), the uniform tree of the same size
+        Iteration iteration = iterations.get(index);
+        if (index == 0) return iteration.depth == 0 ? Double.NaN : Math.pow(iteration.nodes, 1.0 / iteration.depth);
+        long before = iterations.get(index - 1).nodes;
+        return before == 0 ? Double.NaN : (double) iteration.nodes / before;
+    }
+
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Nodes: %d interior, %d leaf, %.0f nodes/s over %.1f ms%n", interiorNodes, leafNodes, nodesPerSecond(), elapsedNs / 1e6));
+        report.append(String.format("Table probes: %d, hits: %d (%.1f%%)%n", ttProbes, ttHits, 100 * ttHitRate()));
+        if (tablebaseHits > 0) report.append(String.format("Tablebase hits: %d%n", tablebaseHits));
+        for (int i = 0; i < iterations.size(); i++) {
+            Iteration iteration = iterations.get(i);
+            report.append(String.format("Depth %d: %d nodes, %.1f ms, branching factor %.2f%s%n", iteration.depth, iteration.nodes,
+                    iteration.elapsedNs / 1e6, branchingFactor(i), i == 0 ? " (nodes^(1/depth))" : ""));
+        }
+        return report.toString();
+    }
+
+    @Name("mill.SearchIteration")
+    @Label("Search Iteration")
+    @Category("Mill Engine")
+    static class IterationEvent extends Event {
+        @Label("Engine")
+        String engine;
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Branching Factor")
+        double branchingFactor;
+    }
+
+    @Name("mill.Search")
+    @Label("Search")
+    @Category("Mill Engine")
+    static class SearchEvent extends Event {
+        @Label("Engine")
+        String engine;
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Nodes per Second")
+        double nodesPerSecond;
+        @Label("Beta Cutoffs")
+        long betaCutoffs;
+        @Label("First Move Cutoff Rate")
+        double firstMoveCutoffRate;
+        @Label("Table Hit Rate")
+        double ttHitRate;
+    }
+}
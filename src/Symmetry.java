@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class Symmetry {
+    // Symmetries of the board: permutations of the 18 locations that map the adjacency lists onto themselves
+    // and the mills closeMill checks for each location onto the mills checked for its image. Such a
+    // permutation maps every position to one with the same moves, mills and evaluation, so positions that
+    // are images of each other can share one canonical form in tables, caches and books.
+    // The group is derived from Bitboard's tables rather than written down, because the tables are not the
+    // textbook board: g0 lists e4 as a neighbor, g3 lists g0 but not the reverse, and e2 checks g0, f1, e2
+    // as its mill. With these tables the derived group is the identity alone, so canonical() returns its
+    // argument, but it stays correct if the tables are ever made symmetric.
+    private static final int[][] PERMUTATIONS; // PERMUTATIONS[k][i] is the image of location i, the identity first
+    private static final int[][][] CHUNKS; // CHUNKS[k][c][v] is the image under k of v placed in the c-th 6-bit chunk of a mask
+
+    static {
+        List<int[]> found = new ArrayList<>();
+        search(new int[Bitboard.POINTS], 0, 0, found);
+        PERMUTATIONS = found.toArray(new int[0][]);
+        for (int[] p : PERMUTATIONS) { // The symmetries must form a group: closed under composition
+            for (int[] q : PERMUTATIONS) {
+                int[] pq = new int[Bitboard.POINTS];
+                for (int i = 0; i < Bitboard.POINTS; i++) pq[i] = p[q[i]];
+                if (indexOf(pq) < 0) throw new IllegalStateException("Board symmetries are not closed under composition");
+            }
+        }
+        CHUNKS = new int[PERMUTATIONS.length][3][64];
+        for (int k = 0; k < PERMUTATIONS.length; k++) {
+            for (int c = 0; c < 3; c++) {
+                for (int v = 0; v < 64; v++) {
+                    CHUNKS[k][c][v] = map(PERMUTATIONS[k], v << (6 * c));
+                }
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    private static void search(int[] image, int location, int used, List<int[]> found) { // Backtracking over images of locations 0, 1, 2...
+        if (location == Bitboard.POINTS) {
+            if (preservesMills(image)) found.add(image.clone());
+            return;
+        }
+        for (int candidate = 0; candidate < Bitboard.POINTS; candidate++) {
+            if ((used & 1 << candidate) != 0) continue;
+            image[location] = candidate;
+            if (preservesAdjacency(image, location)) search(image, location + 1, used | 1 << candidate, found);
+        }
+    }
+
+    private static boolean preservesAdjacency(int[] image, int last) { // Checks every pair that involves last against the earlier locations
+        for (int i = 0; i <= last; i++) {
+            if (((Bitboard.neighbors(last) >> i & 1) != 0) != ((Bitboard.neighbors(image[last]) >> image[i] & 1) != 0)) return false;
+            if (((Bitboard.neighbors(i) >> last & 1) != 0) != ((Bitboard.neighbors(image[i]) >> image[last] & 1) != 0)) return false;
+        }
+        return true;
+    }
+
+    private static boolean preservesMills(int[] image) {
+        for (int location = 0; location < Bitboard.POINTS; location++) {
+            int target = image[location];
+            if (Bitboard.millCountAt(location) != Bitboard.millCountAt(target)) return false;
+            for (int m = 0; m < Bitboard.millCountAt(location); m++) {
+                int mill = map(image, Bitboard.millsAt(location, m));
+                boolean matched = false;
+                for (int n = 0; n < Bitboard.millCountAt(target); n++) {
+                    if (Bitboard.millsAt(target, n) == mill) matched = true;
+                }
+                if (!matched) return false;
+            }
+        }
+        return true;
+    }
+
+    private static int map(int[] image, int mask) {
+        int result = 0;
+        for (; mask != 0; mask &= mask - 1) {
+            result |= 1 << image[Integer.numberOfTrailingZeros(mask)];
+        }
+        return result;
+    }
+
+    private static int indexOf(int[] permutation) {
+        for (int k = 0; k < PERMUTATIONS.length; k++) {
+            if (Arrays.equals(PERMUTATIONS[k], permutation)) return k;
+        }
+        return -1;
+    }
+
+    public static int count() { // Number of symmetries, including the identity
+        return PERMUTATIONS.length;
+    }
+
+    public static int location(int symmetry, int location) { // Image of a location under the symmetry-th symmetry
+        return PERMUTATIONS[symmetry][location];
+    }
+
+    public static long apply(long position, int symmetry) {
+        int[][] chunks = CHUNKS[symmetry];
+        return Bitboard.of(apply(chunks, Bitboard.white(position)), apply(chunks, Bitboard.black(position)));
+    }
+
+    private static int apply(int[][] chunks, int mask) {
+        return chunks[0][mask & 63] | chunks[1][(mask >>> 6) & 63] | chunks[2][mask >>> 12];
+    }
+
+    public static int inverse(int symmetry) { // Index of the symmetry that undoes the symmetry-th one
+        int[] p = PERMUTATIONS[symmetry], inverse = new int[Bitboard.POINTS];
+        for (int i = 0; i < Bitboard.POINTS; i++) inverse[p[i]] = i;
+        return indexOf(inverse);
+    }
+
+    public static long canonical(long position) { // The smallest packed value among the images of position
+        return apply(position, canonicalSymmetry(position));
+    }
+
+    public static int canonicalSymmetry(long position) { // Index of the symmetry that maps position to its canonical form
+        long best = position;
+        int symmetry = 0; // Index 0 is the identity
+        for (int k = 1; k < PERMUTATIONS.length; k++) {
+            long image = apply(position, k);
+            if (image < best) {
+                best = image;
+                symmetry = k;
+            }
+        }
+        return symmetry;
+    }
+
+    public static long canonicalHash(long position, boolean isWhite) { // Zobrist key shared by all images of a position
+        return Zobrist.hash(canonical(position), isWhite);
+    }
+}
@@ -0,0 +1,344 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class Tablebase {
+    // Endgame tablebase for the midgame/endgame phase, solved backward from the end of the game.
+    // Positions are grouped by (white count, black count). Under this repo's rules only black ever loses
+    // pieces: GenerateRemove always takes a black piece, also when black closes the mill. So a move stays in
+    // its class or goes to (w, b - 1), and classes are solved in order of increasing b.
+    // A side to move with no moves loses, and black loses as soon as it is down to two pieces.
+    //
+    // File layout: "MTB1", the class count, then (white count, black count, offset) for each class,
+    // then two bytes per position of each class, white to move first. Within a class a position's index is
+    // the colex rank of the white mask among all masks with w bits, times C(18 - w, b), plus the colex rank
+    // of the black mask with the white locations squeezed out.
+    // Each byte is 0 for a draw, 1 + d for a win in d plies or 128 + d for a loss in d plies, for the side to move.
+    private static final int MAGIC = 0x4D544231; // "MTB1"
+    private static final int MAX_DISTANCE = 126; // Longest win or loss a byte can hold
+    private static final int WIN = 1, LOSS = 128; // Byte offsets of the two results
+    public static final int WIN_SCORE = 10000; // Score of a win in 0 plies, a win in d plies scores WIN_SCORE - d
+    private static final int[][] BINOMIAL = new int[Bitboard.POINTS + 1][Bitboard.POINTS + 1];
+
+    static {
+        for (int n = 0; n <= Bitboard.POINTS; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+        }
+    }
+
+    private final ClassView[][] classes = new ClassView[10][10]; // classes[w][b], null if not in the file
+
+    private Tablebase() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[1].equals("--probe")) { // Prints the stored result of a board for both sides to move
+            Tablebase tablebase = open(Path.of(args[0]));
+            long board = Bitboard.fromString(args[2]);
+            for (boolean isWhite : new boolean[]{true, false}) {
+                System.out.println((isWhite ? "White" : "Black") + " to move: " + describe(tablebase.probe(board, isWhite)));
+            }
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Input format: java Tablebase <output file> <max pieces> [--verify] | java Tablebase <file> --probe <board>");
+            return;
+        }
+        int maxPieces = Integer.parseInt(args[1]);
+        boolean verify = args.length > 2 && args[2].equals("--verify");
+        build(Path.of(args[0]), maxPieces, verify);
+    }
+
+    private static String describe(int code) {
+        if (code < 0) return "not in the tablebase";
+        if (code == 0) return "draw";
+        return code < LOSS ? "win in " + (code - WIN) + " plies" : "loss in " + (code - LOSS) + " plies";
+    }
+
+    // ---- Probing ----
+
+    private static final class ClassView { // One class of a mapped file
+        final MappedByteBuffer buffer;
+        final int blackCombinations; // C(18 - w, b), the number of black masks for each white mask
+
+        ClassView(MappedByteBuffer buffer, int blackCombinations) {
+            this.buffer = buffer;
+            this.blackCombinations = blackCombinations;
+        }
+    }
+
+    public static Tablebase open(Path file) throws IOException { // Maps every class of the file, probes then read the page cache directly
+        Tablebase tablebase = new Tablebase();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8);
+            if (header.getInt() != MAGIC) throw new IOException(file + " is not a tablebase file");
+            int count = header.getInt();
+            ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 8, count * 16L);
+            for (int i = 0; i < count; i++) {
+                int w = entries.getInt(), b = entries.getInt();
+                long offset = entries.getLong();
+                long size = 2L * classSize(w, b);
+                tablebase.classes[w][b] = new ClassView(channel.map(FileChannel.MapMode.READ_ONLY, offset, size), BINOMIAL[Bitboard.POINTS - w][b]);
+            }
+        } // The mappings stay valid after the channel is closed
+        return tablebase;
+    }
+
+    public int probe(long board, boolean isWhite) { // The stored byte for board with isWhite to move, or -1 if its class is not in the file
+        int white = Bitboard.white(board), black = Bitboard.black(board);
+        int whitePieces = Integer.bitCount(white), blackPieces = Integer.bitCount(black);
+        if (whitePieces > 9 || blackPieces > 9) return -1; // No legal position, but an input board can be anything
+        ClassView view = classes[whitePieces][blackPieces];
+        if (view == null) return -1;
+        long index = (long) rank(white) * view.blackCombinations + rank(squeeze(black, white));
+        return view.buffer.get((int) (2 * index + (isWhite ? 0 : 1))) & 0xFF;
+    }
+
+    public static int score(int code, boolean isWhite) { // Converts a probed byte to a score for white, like the static estimations
+        if (code == 0) return 0;
+        int score = code < LOSS ? WIN_SCORE - (code - WIN) : -(WIN_SCORE - (code - LOSS)); // For the side to move
+        return isWhite ? score : -score;
+    }
+
+    // ---- Indexing ----
+
+    private static int classSize(int w, int b) {
+        return BINOMIAL[Bitboard.POINTS][w] * BINOMIAL[Bitboard.POINTS - w][b];
+    }
+
+    private static int rank(int mask) { // Colex rank of mask among the masks with the same number of bits
+        int rank = 0;
+        for (int k = 1; mask != 0; k++, mask &= mask - 1) {
+            rank += BINOMIAL[Integer.numberOfTrailingZeros(mask)][k];
+        }
+        return rank;
+    }
+
+    private static int squeeze(int mask, int removed) { // Drops the bits of removed from mask and closes the gaps
+        int result = 0, out = 0;
+        for (int location = 0; location < Bitboard.POINTS; location++) {
+            int bit = 1 << location;
+            if ((removed & bit) != 0) continue;
+            if ((mask & bit) != 0) result |= 1 << out;
+            out++;
+        }
+        return result;
+    }
+
+    private static int spread(int mask, int removed) { // Inverse of squeeze: places the bits of mask on the locations not in removed
+        int result = 0, in = 0;
+        for (int location = 0; location < Bitboard.POINTS; location++) {
+            int bit = 1 << location;
+            if ((removed & bit) != 0) continue;
+            if ((mask & 1 << in) != 0) result |= bit;
+            in++;
+        }
+        return result;
+    }
+
+    private static int nextCombination(int mask) { // Next larger mask with the same number of bits (Gosper's hack), colex order
+        int lowest = mask & -mask, ripple = mask + lowest;
+        return ripple | (((mask ^ ripple) >>> 2) / lowest);
+    }
+
+    private static long unrank(int w, int b, int index) {
+        int blackCombinations = BINOMIAL[Bitboard.POINTS - w][b];
+        int white = unrankMask(w, index / blackCombinations);
+        return Bitboard.of(white, spread(unrankMask(b, index % blackCombinations), white));
+    }
+
+    private static int unrankMask(int k, int rank) { // Mask with k bits and the given colex rank
+        int mask = 0;
+        for (int n = Bitboard.POINTS - 1; k > 0; n--) {
+            if (BINOMIAL[n][k] <= rank) {
+                rank -= BINOMIAL[n][k];
+                mask |= 1 << n;
+                k--;
+            }
+        }
+        return mask;
+    }
+
+    // ---- Building ----
+
+    private static void build(Path file, int maxPieces, boolean verify) throws IOException {
+        byte[][][] solved = new byte[10][10][];
+        int count = 0;
+        for (int b = 3; b <= 9; b++) { // Children are in the same class or have one black piece less, so b goes up
+            for (int w = 3; w <= 9 && w + b <= maxPieces; w++) {
+                long start = System.nanoTime();
+                solved[w][b] = solve(w, b, solved, verify);
+                count++;
+                int[] totals = new int[3];
+                for (byte code : solved[w][b]) totals[code == 0 ? 0 : (code & 0xFF) < LOSS ? 1 : 2]++;
+                System.out.printf("(%d, %d): %d entries, %d wins, %d losses, %d draws for the side to move, %d ms%n",
+                        w, b, solved[w][b].length, totals[1], totals[2], totals[0], (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            long offset = 8 + count * 16L;
+            for (int b = 3; b <= 9; b++) {
+                for (int w = 3; w <= 9; w++) {
+                    if (solved[w][b] == null) continue;
+                    out.writeInt(w);
+                    out.writeInt(b);
+                    out.writeLong(offset);
+                    offset += solved[w][b].length;
+                }
+            }
+            for (int b = 3; b <= 9; b++) {
+                for (int w = 3; w <= 9; w++) {
+                    if (solved[w][b] != null) out.write(solved[w][b]);
+                }
+            }
+        }
+    }
+
+    private static byte[] solve(int w, int b, byte[][][] solved, boolean verify) {
+        // Entry e = 2 * index + (0 if white is to move, 1 if black is). First every entry counts its children:
+        // a child in the lower class, or with black down to two pieces, is already decided; the others are
+        // resolved backward. Entries are then finalized in order of distance from a bucket per distance,
+        // so a win gets the shortest distance and a loss the longest.
+        int size = classSize(w, b);
+        byte[] codes = new byte[2 * size];
+        short[] remaining = new short[2 * size]; // Children in this class not yet known to be won for the opponent, or drawn ones
+        byte[] floor = new byte[2 * size]; // Longest distance of an already decided child that is won for the opponent
+        IntList[] buckets = new IntList[MAX_DISTANCE + 2]; // Entries times 2, plus 1 for a loss, waiting to be finalized
+        for (int d = 0; d < buckets.length; d++) buckets[d] = new IntList();
+        PositionList children = new PositionList();
+        long[] distinct = new long[64];
+        long inClassEdges = 0;
+
+        for (int index = 0; index < size; index++) {
+            long board = unrank(w, b, index);
+            for (int side = 0; side < 2; side++) {
+                boolean isWhite = side == 0;
+                int entry = 2 * index + side;
+                children.clear();
+                Bitboard.GenerateMovesMidEndGame(board, isWhite, children);
+                if (distinct.length < children.size()) distinct = new long[children.size() * 2];
+                for (int i = 0; i < children.size(); i++) distinct[i] = children.get(i);
+                Arrays.sort(distinct, 0, children.size()); // Different moves can lead to the same child
+                int winAt = Integer.MAX_VALUE, inClass = 0, drawn = 0, maxWon = -1;
+                for (int i = 0; i < children.size(); i++) {
+                    long child = distinct[i];
+                    if (i > 0 && child == distinct[i - 1]) continue;
+                    int childBlack = Bitboard.countBlack(child);
+                    if (childBlack == b) {
+                        inClass++;
+                        continue;
+                    }
+                    int code; // Result of the child for its side to move, the opponent of this entry's side
+                    if (childBlack <= 2) code = isWhite ? LOSS : WIN; // Black is out of the game
+                    else code = codeOf(solved[w][childBlack], child, !isWhite, w, childBlack);
+                    if (code == 0) drawn++; // A drawn child keeps this entry from ever being lost
+                    else if (code >= LOSS) winAt = Math.min(winAt, code - LOSS + 1);
+                    else maxWon = Math.max(maxWon, code - WIN);
+                }
+                remaining[entry] = (short) (inClass + drawn);
+                floor[entry] = (byte) maxWon;
+                inClassEdges += inClass;
+                if (winAt != Integer.MAX_VALUE) bucket(buckets, winAt).add(2 * entry);
+                else if (inClass + drawn == 0) bucket(buckets, maxWon + 1).add(2 * entry + 1); // Every move loses, or there are none
+            }
+        }
+        long predecessorEdges = 0;
+        int[] predecessors = new int[Bitboard.POINTS * Bitboard.POINTS];
+        PositionList check = new PositionList();
+
+        for (int d = 0; d < buckets.length; d++) {
+            IntList bucket = buckets[d];
+            for (int i = 0; i < bucket.size; i++) {
+                int item = bucket.items[i];
+                int entry = item >>> 1;
+                boolean lost = (item & 1) != 0;
+                if (codes[entry] != 0) continue; // Already finalized at a shorter distance
+                codes[entry] = (byte) (lost ? LOSS + d : WIN + d);
+                int index = entry >>> 1;
+                boolean isWhite = (entry & 1) == 0;
+                long board = unrank(w, b, index);
+                int n = predecessors(board, !isWhite, w, b, predecessors);
+                predecessorEdges += n;
+                for (int p = 0; p < n; p++) {
+                    int predecessor = predecessors[p];
+                    if (verify) verifyPredecessor(unrank(w, b, predecessor >>> 1), board, !isWhite, check);
+                    if (codes[predecessor] != 0) continue;
+                    if (lost) {
+                        bucket(buckets, d + 1).add(2 * predecessor); // Moving here wins
+                    } else if (--remaining[predecessor] == 0) {
+                        bucket(buckets, Math.max(d, floor[predecessor]) + 1).add(2 * predecessor + 1); // Every move loses
+                    }
+                }
+            }
+            buckets[d] = null;
+        }
+        if (verify) { // Every in-class move must have been found backward exactly once, for finalized and drawn entries alike
+            for (int entry = 0; entry < codes.length; entry++) {
+                if (codes[entry] == 0) predecessorEdges += predecessors(unrank(w, b, entry >>> 1), (entry & 1) != 0, w, b, predecessors);
+            }
+            if (predecessorEdges != inClassEdges) {
+                throw new IllegalStateException("Class (" + w + ", " + b + ") has " + inClassEdges + " moves but " + predecessorEdges + " unmoves");
+            }
+        }
+        return codes;
+    }
+
+    private static IntList bucket(IntList[] buckets, int distance) {
+        if (distance > MAX_DISTANCE) throw new IllegalStateException("Distance " + distance + " does not fit in a tablebase byte");
+        return buckets[distance];
+    }
+
+    private static int codeOf(byte[] codes, long board, boolean isWhite, int w, int b) {
+        int white = Bitboard.white(board);
+        int index = rank(white) * BINOMIAL[Bitboard.POINTS - w][b] + rank(squeeze(Bitboard.black(board), white));
+        return codes[2 * index + (isWhite ? 0 : 1)] & 0xFF;
+    }
+
+    private static int predecessors(long board, boolean moverIsWhite, int w, int b, int[] out) {
+        // Entries of this class from which moverIsWhite moved to board: a piece went back from its location to
+        // an empty one it could have come from. If the move closed a mill, it stays in the class only when
+        // GenerateRemove had no black piece to take, so every black piece must be in a mill.
+        int own = Bitboard.pieces(board, moverIsWhite), free = Bitboard.empty(board), black = Bitboard.black(board);
+        boolean hopping = Integer.bitCount(own) == 3;
+        boolean nothingRemovable = (black & ~Bitboard.inMill(black)) == 0;
+        int n = 0;
+        for (int pieces = own; pieces != 0; pieces &= pieces - 1) {
+            int to = Integer.numberOfTrailingZeros(pieces);
+            if (Bitboard.closesMill(to, own) && !nothingRemovable) continue;
+            for (int from = hopping ? free : free & Bitboard.neighborOf(to); from != 0; from &= from - 1) {
+                int back = own ^ (1 << to) ^ (from & -from);
+                long previous = moverIsWhite ? Bitboard.of(back, black) : Bitboard.of(Bitboard.white(board), back);
+                int white = Bitboard.white(previous);
+                int index = rank(white) * BINOMIAL[Bitboard.POINTS - w][b] + rank(squeeze(Bitboard.black(previous), white));
+                out[n++] = 2 * index + (moverIsWhite ? 0 : 1);
+            }
+        }
+        return n;
+    }
+
+    private static void verifyPredecessor(long previous, long board, boolean moverIsWhite, PositionList check) {
+        check.clear();
+        Bitboard.GenerateMovesMidEndGame(previous, moverIsWhite, check);
+        for (int i = 0; i < check.size(); i++) {
+            if (check.get(i) == board) return;
+        }
+        throw new IllegalStateException(Bitboard.toString(board) + " is not a child of " + Bitboard.toString(previous));
+    }
+
+    private static final class IntList { // Growable int array for the distance buckets
+        int[] items = new int[16];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+public class TranspositionTable {
+    // Lock-free so that several search threads can share one table.
+    // Each entry is two longs in one array: the key XORed with the data, then the data.
+    // A reader accepts an entry only if the two words XOR back to its key, so an entry torn by two
+    // threads writing at once reads as a miss instead of as another position's score.
+    // Data layout: score in bits 0-31, move in bits 32-49, depth + 1 in bits 50-57 (0 marks an empty slot), flag in bits 58-59.
+    public static final int EXACT = 0; // Score is the exact value of the position
+    public static final int LOWER = 1; // Search failed high, the value is at least score
+    public static final int UPPER = 2; // Search failed low, the value is at most score
+    public static final long MISS = 0; // probe result when the position is not stored
+    private static final int ENTRY_BYTES = 16; // key ^ data, data
+
+    public enum Replacement {
+        ALWAYS, // Every store overwrites the slot
+        DEPTH_PREFERRED // Keep an entry for another position if it was searched deeper than the new one
+    }
+
+    private final long[] entries;
+    private final int mask;
+    private final Replacement replacement;
+
+    public TranspositionTable(int entries, Replacement replacement) { // entries is rounded down to a power of two
+        int size = Integer.highestOneBit(Math.max(entries, 1));
+        this.entries = new long[size * 2];
+        mask = size - 1;
+        this.replacement = replacement;
+    }
+
+    public static TranspositionTable ofMegabytes(int megabytes, Replacement replacement) {
+        long entries = (long) megabytes * 1024 * 1024 / ENTRY_BYTES;
+        return new TranspositionTable((int) Math.min(entries, 1 << 29), replacement);
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+
+    public long probe(long key) { // Returns the stored entry for key, or MISS
+        int index = ((int) key & mask) << 1;
+        long data = entries[index + 1];
+        long check = entries[index];
+        return data != 0 && (check ^ data) == key ? data : MISS;
+    }
+
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 32) & 0x3FFFF;
+    }
+
+    public static int depth(long entry) {
+        return ((int) (entry >>> 50) & 0xFF) - 1;
+    }
+
+    public static int flag(long entry) {
+        return (int) (entry >>> 58) & 3;
+    }
+
+    public void store(long key, int depth, int flag, int score, int move) {
+        int index = ((int) key & mask) << 1;
+        if (replacement == Replacement.DEPTH_PREFERRED) {
+            long old = entries[index + 1];
+            if (old != 0 && (entries[index] ^ old) != key && depth(old) > depth) {
+                return; // Keep the deeper entry for the other position
+            }
+        }
+        long data = (score & 0xFFFFFFFFL) | (long) move << 32 | (long) (depth + 1) << 50 | (long) flag << 58;
+        entries[index] = key ^ data;
+        entries[index + 1] = data;
+    }
+
+    public int capacity() {
+        return entries.length / 2;
+    }
+}
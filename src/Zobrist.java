@@ -0,0 +1,34 @@
+import java.util.Random;
+
+public final class Zobrist {
+    // One random key per bit of a packed Bitboard position, plus one for the side to move.
+    // The seed is fixed so keys, and anything stored under them, are the same on every run.
+    private static final long[] KEYS = new long[64];
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(0x5EED_9A11L);
+        for (int bit = 0; bit < KEYS.length; bit++) {
+            KEYS[bit] = random.nextLong();
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    public static long hash(long position, boolean isWhite) { // Full key, computed once at the root
+        long key = isWhite ? WHITE_TO_MOVE : 0;
+        for (long bits = position; bits != 0; bits &= bits - 1) {
+            key ^= KEYS[Long.numberOfTrailingZeros(bits)];
+        }
+        return key;
+    }
+
+    public static long update(long key, long delta) { // Key of the child reached by flipping delta, with the other side to move
+        for (; delta != 0; delta &= delta - 1) {
+            key ^= KEYS[Long.numberOfTrailingZeros(delta)];
+        }
+        return key ^ WHITE_TO_MOVE;
+    }
+}